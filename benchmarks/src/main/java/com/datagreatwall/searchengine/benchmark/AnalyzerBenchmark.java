@@ -0,0 +1,89 @@
+package com.datagreatwall.searchengine.benchmark;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.datagreatwall.searchengine.Analyzers;
+
+/**
+ * 
+ * 共享Analyzer(默认SmartChineseAnalyzer)的分词吞吐量，每次操作对一段文本分词并返回词数
+ * 
+ * @author 石瑜
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnalyzerBenchmark {
+
+	private static final int VALUES = 256;
+
+	@Param({ "20", "200" })
+	public int words;
+
+	private Analyzer analyzer;
+
+	private String[] values;
+
+	private int next;
+
+	@Setup
+	public void setup() {
+
+		analyzer = Analyzers.getAnalyzer();
+
+		Corpus corpus = new Corpus(3);
+
+		values = new String[VALUES];
+
+		for (int i = 0; i < VALUES; i++) {
+
+			values[i] = corpus.text(words, words + 1);
+
+		}
+
+	}
+
+	@Benchmark
+	public int tokenize() throws IOException {
+
+		TokenStream stream = analyzer.reusableTokenStream("value", new StringReader(values[next++ & (VALUES - 1)]));
+
+		stream.reset();
+
+		int count = 0;
+
+		while (stream.incrementToken()) {
+
+			count++;
+
+		}
+
+		stream.end();
+
+		stream.close();
+
+		return count;
+
+	}
+
+}
@@ -0,0 +1,147 @@
+package com.datagreatwall.searchengine.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.lucene.index.IndexWriter;
+
+import com.datagreatwall.searchengine.IndexTable;
+
+/**
+ * 
+ * 生成的中文测试数据，不依赖数据库及网络，相同的种子生成相同的数据
+ * 
+ * @author 石瑜
+ * 
+ */
+public class Corpus {
+
+	public static final String KEY_NAME = "id";
+
+	public static final String[] COL_NAMES = { "title", "content", "author", "tags" };
+
+	// 常用词，按出现频率从高到低
+	private static final String[] WORDS = { "中国", "发展", "经济", "市场", "企业", "技术", "北京", "上海", "新闻", "平台", "数据", "搜索", "引擎", "服务", "用户", "产品", "信息", "管理", "系统", "网络", "国际", "政府", "社会", "投资", "银行", "互联网", "教育", "文化", "科技", "工业", "城市", "农村", "环境", "能源", "交通", "医疗", "健康", "安全", "研究", "创新", "政策", "改革", "合作", "项目", "公司", "行业", "增长", "价格", "消费", "人民", "地区", "世界", "历史", "体育", "比赛", "学生", "学校", "大学", "科学", "计算机", "软件", "手机", "汽车", "房地产", "股票", "基金", "证券", "贸易", "出口", "进口" };
+
+	private final Random random;
+
+	public Corpus(long seed) {
+
+		random = new Random(seed);
+
+	}
+
+	/**
+	 * 生成词数在[min, max)之间的文本，词的出现频率近似Zipf分布
+	 */
+	public String text(int min, int max) {
+
+		int n = min + random.nextInt(Math.max(1, max - min));
+
+		StringBuilder sb = new StringBuilder(n * 4);
+
+		for (int i = 0; i < n; i++) {
+
+			sb.append(word());
+
+			// 约每12个词一个句号
+			sb.append(random.nextInt(12) == 0 ? "。" : "");
+
+		}
+
+		return sb.toString();
+
+	}
+
+	/**
+	 * 生成HTML内容，每段一个&lt;p&gt;标签
+	 */
+	public String html(int paragraphs) {
+
+		StringBuilder sb = new StringBuilder();
+
+		sb.append("<html><head><title>").append(text(3, 8)).append("</title><style>p{margin:0}</style></head><body>");
+
+		for (int i = 0; i < paragraphs; i++) {
+
+			sb.append("<p class=\"p").append(i).append("\">").append(text(20, 60)).append(" &amp; <b>").append(word()).append("</b>&nbsp;</p>\n");
+
+		}
+
+		sb.append("</body></html>");
+
+		return sb.toString();
+
+	}
+
+	/**
+	 * 一个高频词
+	 */
+	public String word() {
+
+		// 平方使低序号的词出现更多
+		double r = random.nextDouble();
+
+		return WORDS[(int) (r * r * WORDS.length)];
+
+	}
+
+	/**
+	 * 生成COL_NAMES对应的列值，content为HTML内容
+	 */
+	public String[] row() {
+
+		return new String[] { text(5, 15), html(3), text(1, 3), text(2, 6) };
+
+	}
+
+	/**
+	 * 生成rows条记录的索引
+	 * 
+	 * @param indexPath
+	 *            索引目录
+	 * @param rows
+	 *            记录数
+	 * @throws IOException
+	 */
+	public void index(File indexPath, int rows) throws IOException {
+
+		IndexTable indexTable = new IndexTable();
+
+		IndexWriter writer = indexTable.openWriter(indexPath, true);
+
+		try {
+
+			for (int i = 0; i < rows; i++) {
+
+				indexTable.index(writer, KEY_NAME, String.valueOf(i), COL_NAMES, row());
+
+			}
+
+		} finally {
+
+			indexTable.closeWriter(writer, true);
+
+		}
+
+	}
+
+	/**
+	 * 删除目录
+	 */
+	public static void delete(File file) {
+
+		File[] files = file.listFiles();
+
+		for (int i = 0; files != null && i < files.length; i++) {
+
+			delete(files[i]);
+
+		}
+
+		file.delete();
+
+	}
+
+}
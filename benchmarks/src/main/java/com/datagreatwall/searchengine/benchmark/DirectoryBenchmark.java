@@ -0,0 +1,129 @@
+package com.datagreatwall.searchengine.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.datagreatwall.searchengine.Directories;
+import com.datagreatwall.searchengine.IndexTable;
+import com.datagreatwall.searchengine.SearchTable;
+import com.datagreatwall.searchengine.SearcherPool;
+
+/**
+ * 
+ * 不同Directory下SearchTable.search的延迟，索引为ROWS条记录合并后的一个段加FRESH条新增记录的小段，
+ * nrt使用共享IndexWriter近实时搜索(新增的小段在内存中)，其他模式提交并关闭IndexWriter后搜索
+ * 
+ * @author 石瑜
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DirectoryBenchmark {
+
+	private static final int FRESH = 2000;
+
+	private static final int QUERIES = 256;
+
+	@Param({ Directories.FS, Directories.MMAP, Directories.NIO, Directories.NRT, Directories.RAM })
+	public String directory;
+
+	private File indexBase;
+
+	private IndexTable indexTable;
+
+	private SearchTable searchTable;
+
+	private String[] colNames = { "title", "content" };
+
+	private String[] queries;
+
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+
+		indexBase = File.createTempFile("searchengine", "bench");
+
+		indexBase.delete();
+
+		Directories.setMode(SearchBenchmark.TABLE, directory);
+
+		Corpus corpus = new Corpus(6);
+
+		corpus.index(new File(indexBase, SearchBenchmark.TABLE), SearchBenchmark.ROWS);
+
+		indexTable = new IndexTable();
+
+		for (int i = 0; i < FRESH; i++) {
+
+			indexTable.index(indexBase, SearchBenchmark.TABLE, Corpus.KEY_NAME, String.valueOf(SearchBenchmark.ROWS + i), Corpus.COL_NAMES, corpus.row());
+
+		}
+
+		if (Directories.NRT.equals(directory)) {
+
+			SearcherPool.refresh(new File(indexBase, SearchBenchmark.TABLE));
+
+		} else {
+
+			indexTable.commit(indexBase, SearchBenchmark.TABLE);
+
+			indexTable.closeWriter(indexBase, SearchBenchmark.TABLE);
+
+		}
+
+		// 测量搜索本身，不使用结果缓存
+		SearchTable.CACHE.setMaxBytes(0);
+
+		searchTable = new SearchTable();
+
+		queries = new String[QUERIES];
+
+		for (int i = 0; i < QUERIES; i++) {
+
+			queries[i] = corpus.word() + " " + corpus.word();
+
+		}
+
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+
+		indexTable.closeWriter(indexBase, SearchBenchmark.TABLE);
+
+		SearcherPool.close(new File(indexBase, SearchBenchmark.TABLE));
+
+		Directories.setMode(SearchBenchmark.TABLE, null);
+
+		Corpus.delete(indexBase);
+
+	}
+
+	@Benchmark
+	public String[] search() {
+
+		return searchTable.search(indexBase, SearchBenchmark.TABLE, queries[next++ & (QUERIES - 1)], colNames, Corpus.KEY_NAME, false, 20);
+
+	}
+
+}
@@ -0,0 +1,73 @@
+package com.datagreatwall.searchengine.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.datagreatwall.searchengine.Extractors;
+import com.datagreatwall.searchengine.TextExtractor;
+
+/**
+ * 
+ * 提取纯文本的耗时，比较Jsoup与顺序扫描，内容为HTML或纯文本
+ * 
+ * @author 石瑜
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExtractBenchmark {
+
+	private static final int VALUES = 256;
+
+	@Param({ "jsoup", "fast" })
+	public String extractor;
+
+	@Param({ "true", "false" })
+	public boolean html;
+
+	private TextExtractor textExtractor;
+
+	private String[] values;
+
+	private int next;
+
+	@Setup
+	public void setup() {
+
+		textExtractor = "jsoup".equals(extractor) ? Extractors.JSOUP : Extractors.FAST;
+
+		Corpus corpus = new Corpus(2);
+
+		values = new String[VALUES];
+
+		for (int i = 0; i < VALUES; i++) {
+
+			values[i] = html ? corpus.html(5) : corpus.text(100, 300);
+
+		}
+
+	}
+
+	@Benchmark
+	public String extract() {
+
+		return textExtractor.extract(values[next++ & (VALUES - 1)]);
+
+	}
+
+}
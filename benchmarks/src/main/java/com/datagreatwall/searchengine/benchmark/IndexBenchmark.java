@@ -0,0 +1,108 @@
+package com.datagreatwall.searchengine.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.datagreatwall.searchengine.Analyzers;
+import com.datagreatwall.searchengine.IndexMerge;
+import com.datagreatwall.searchengine.IndexTable;
+
+/**
+ * 
+ * IndexTable.index(IndexWriter, ...)索引一条记录的耗时，包括HTML转换、分词及写入内存中的索引
+ * 
+ * @author 石瑜
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndexBenchmark {
+
+	private static final int ROWS = 1024;
+
+	private IndexTable indexTable;
+
+	private RAMDirectory dir;
+
+	private IndexWriter writer;
+
+	private String[][] rows;
+
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setup() {
+
+		indexTable = new IndexTable();
+
+		Corpus corpus = new Corpus(1);
+
+		rows = new String[ROWS][];
+
+		for (int i = 0; i < ROWS; i++) {
+
+			rows[i] = corpus.row();
+
+		}
+
+	}
+
+	@Setup(Level.Iteration)
+	public void open() throws IOException {
+
+		dir = new RAMDirectory();
+
+		IndexWriterConfig iwc = new IndexWriterConfig(Version.LUCENE_36, Analyzers.getAnalyzer());
+
+		iwc.setOpenMode(OpenMode.CREATE);
+
+		iwc.setRAMBufferSizeMB(256);
+
+		IndexMerge.config(iwc);
+
+		writer = new IndexWriter(dir, iwc);
+
+	}
+
+	@TearDown(Level.Iteration)
+	public void close() throws IOException {
+
+		writer.close();
+
+		dir.close();
+
+	}
+
+	@Benchmark
+	public void index() throws IOException {
+
+		int n = next++ & (ROWS - 1);
+
+		// document()会替换列值为纯文本，每次使用副本
+		indexTable.index(writer, Corpus.KEY_NAME, String.valueOf(next), Corpus.COL_NAMES, rows[n].clone());
+
+	}
+
+}
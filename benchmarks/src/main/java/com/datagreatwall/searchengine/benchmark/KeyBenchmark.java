@@ -0,0 +1,103 @@
+package com.datagreatwall.searchengine.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.datagreatwall.searchengine.SearchTable;
+import com.datagreatwall.searchengine.SearcherPool;
+
+/**
+ * 
+ * 搜索结果键值的获取耗时，top为20/1000，读取存储的文档或使用FieldCache(keyCache)
+ * 
+ * @author 石瑜
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KeyBenchmark {
+
+	@Param({ "20", "1000" })
+	public int top;
+
+	@Param({ "false", "true" })
+	public boolean keyCache;
+
+	private File indexBase;
+
+	private File indexPath;
+
+	private SearchTable searchTable;
+
+	private IndexSearcher searcher;
+
+	private ScoreDoc[] docs;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+
+		indexBase = File.createTempFile("searchengine", "bench");
+
+		indexBase.delete();
+
+		indexPath = new File(indexBase, SearchBenchmark.TABLE);
+
+		new Corpus(5).index(indexPath, SearchBenchmark.ROWS);
+
+		searchTable = new SearchTable();
+
+		searchTable.setKeyCache(keyCache);
+
+		searcher = searchTable.getSearcher(indexPath);
+
+		// 高频词，命中数大于top
+		docs = searcher.search(searchTable.query("中国", new String[] { "content" }, false), top).scoreDocs;
+
+		if (docs.length < top) {
+
+			throw new IllegalStateException("hits: " + docs.length + " < " + top);
+
+		}
+
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+
+		searchTable.releaseSearcher(indexPath, searcher);
+
+		SearcherPool.close(indexPath);
+
+		Corpus.delete(indexBase);
+
+	}
+
+	@Benchmark
+	public String[] getKeys() throws IOException {
+
+		return searchTable.getKeys(searcher, docs, Corpus.KEY_NAME);
+
+	}
+
+}
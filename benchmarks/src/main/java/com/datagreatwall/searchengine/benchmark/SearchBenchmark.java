@@ -0,0 +1,107 @@
+package com.datagreatwall.searchengine.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.datagreatwall.searchengine.SearchTable;
+import com.datagreatwall.searchengine.SearcherPool;
+
+/**
+ * 
+ * SearchTable.search的延迟，搜索1/2/4个列，多个关键字and或or，不使用结果缓存
+ * 
+ * @author 石瑜
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+	static final int ROWS = 20000;
+
+	static final String TABLE = "bench";
+
+	private static final int QUERIES = 256;
+
+	@Param({ "1", "2", "4" })
+	public int columns;
+
+	@Param({ "true", "false" })
+	public boolean and;
+
+	private File indexBase;
+
+	private SearchTable searchTable;
+
+	private String[] colNames;
+
+	private String[] queries;
+
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+
+		indexBase = File.createTempFile("searchengine", "bench");
+
+		indexBase.delete();
+
+		Corpus corpus = new Corpus(4);
+
+		corpus.index(new File(indexBase, TABLE), ROWS);
+
+		// 测量搜索本身，不使用结果缓存
+		SearchTable.CACHE.setMaxBytes(0);
+
+		searchTable = new SearchTable();
+
+		colNames = new String[columns];
+
+		System.arraycopy(Corpus.COL_NAMES, 0, colNames, 0, columns);
+
+		queries = new String[QUERIES];
+
+		for (int i = 0; i < QUERIES; i++) {
+
+			queries[i] = corpus.word() + " " + corpus.word();
+
+		}
+
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+
+		SearcherPool.close(new File(indexBase, TABLE));
+
+		Corpus.delete(indexBase);
+
+	}
+
+	@Benchmark
+	public String[] search() {
+
+		return searchTable.search(indexBase, TABLE, queries[next++ & (QUERIES - 1)], colNames, Corpus.KEY_NAME, and, 20);
+
+	}
+
+}
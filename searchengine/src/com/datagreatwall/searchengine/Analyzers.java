@@ -0,0 +1,207 @@
+package com.datagreatwall.searchengine;
+
+import java.util.HashMap;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.cn.smart.SmartChineseAnalyzer;
+import org.apache.lucene.queryParser.ParseException;
+import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.Version;
+
+/**
+ * 
+ * 共享的Analyzer及每个线程重用的QueryParser，索引及搜索共用
+ * 
+ * Analyzer每个进程只创建一次(Analyzer是线程安全的)，通过系统属性searchengine.analyzer指定类名，
+ * 如org.wltea.analyzer.lucene.IKAnalyzer，未指定时使用SmartChineseAnalyzer；
+ * QueryParser不是线程安全的，每个线程每个字段一个
+ * 
+ * @author 石瑜
+ * 
+ */
+public class Analyzers {
+
+	public static String ANALYZER = System.getProperty("searchengine.analyzer"); // Analyzer类名，为null时使用SmartChineseAnalyzer
+
+	private static volatile Analyzer analyzer = null;
+
+	// 每个线程：字段名 -> QueryParser
+	private static final ThreadLocal<HashMap<String, QueryParser>> PARSERS = new ThreadLocal<HashMap<String, QueryParser>>() {
+
+		protected HashMap<String, QueryParser> initialValue() {
+
+			return new HashMap<String, QueryParser>();
+
+		}
+
+	};
+
+	private Analyzers() {
+
+	}
+
+	/**
+	 * 获取共享的Analyzer
+	 * 
+	 * @return Analyzer
+	 */
+	public static Analyzer getAnalyzer() {
+
+		Analyzer a = analyzer;
+
+		if (a != null) {
+
+			return a;
+
+		}
+
+		synchronized (Analyzers.class) {
+
+			if (analyzer == null) {
+
+				analyzer = newAnalyzer(ANALYZER);
+
+			}
+
+			return analyzer;
+
+		}
+
+	}
+
+	/**
+	 * 设置共享的Analyzer，已经创建的QueryParser在下次使用时重新创建
+	 * 
+	 * @param a
+	 *            Analyzer
+	 */
+	public static synchronized void setAnalyzer(Analyzer a) {
+
+		analyzer = a;
+
+	}
+
+	/**
+	 * 按类名创建Analyzer，优先使用Version参数的构造函数，失败时使用SmartChineseAnalyzer
+	 * 
+	 * @param className
+	 *            Analyzer类名
+	 * @return Analyzer
+	 */
+	public static Analyzer newAnalyzer(String className) {
+
+		if (className != null && className.trim().length() > 0) {
+
+			try {
+
+				Class<?> c = Class.forName(className.trim());
+
+				try {
+
+					return (Analyzer) c.getConstructor(Version.class).newInstance(Version.LUCENE_36);
+
+				} catch (NoSuchMethodException ex) {
+
+					return (Analyzer) c.newInstance();
+
+				}
+
+			} catch (Exception ex) {
+
+				ex.printStackTrace();
+
+			}
+
+		}
+
+		// Analyzer analyzer = new StandardAnalyzer(Version.LUCENE_36);
+		// Analyzer analyzer = new IKAnalyzer();
+		return new SmartChineseAnalyzer(Version.LUCENE_36);
+
+	}
+
+	/**
+	 * 获取当前线程字段对应的QueryParser
+	 * 
+	 * @param field
+	 *            字段名
+	 * @return QueryParser
+	 */
+	public static QueryParser getParser(String field) {
+
+		HashMap<String, QueryParser> parsers = PARSERS.get();
+
+		QueryParser parser = parsers.get(field);
+
+		Analyzer a = getAnalyzer();
+
+		if (parser == null || parser.getAnalyzer() != a) {
+
+			parser = new QueryParser(Version.LUCENE_36, field, a);
+
+			parsers.put(field, parser);
+
+		}
+
+		return parser;
+
+	}
+
+	/**
+	 * 解析单字段查询
+	 * 
+	 * @param queries
+	 *            关键字
+	 * @param field
+	 *            字段名
+	 * @return Query
+	 * @throws ParseException
+	 */
+	public static Query parse(String queries, String field) throws ParseException {
+
+		return getParser(field).parse(queries);
+
+	}
+
+	/**
+	 * 解析多字段查询，与MultiFieldQueryParser.parse(Version, String, String[], Occur[], Analyzer)相同，但重用QueryParser
+	 * 
+	 * @param queries
+	 *            关键字
+	 * @param fields
+	 *            字段名数组
+	 * @param flags
+	 *            每个字段的BooleanClause.Occur
+	 * @return Query
+	 * @throws ParseException
+	 */
+	public static Query parse(String queries, String[] fields, Occur[] flags) throws ParseException {
+
+		if (fields.length != flags.length) {
+
+			throw new IllegalArgumentException("fields.length != flags.length");
+
+		}
+
+		BooleanQuery bQuery = new BooleanQuery();
+
+		for (int i = 0; i < fields.length; i++) {
+
+			Query q = parse(queries, fields[i]);
+
+			if (q != null && (!(q instanceof BooleanQuery) || ((BooleanQuery) q).getClauses().length > 0)) {
+
+				bQuery.add(q, flags[i]);
+
+			}
+
+		}
+
+		return bQuery;
+
+	}
+
+}
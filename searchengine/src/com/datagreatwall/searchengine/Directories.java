@@ -0,0 +1,205 @@
+package com.datagreatwall.searchengine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.store.NRTCachingDirectory;
+import org.apache.lucene.store.RAMDirectory;
+
+/**
+ * 
+ * 按索引选择Directory实现，SearcherPool、IndexTable、IndexFiles及IndexMerge共用
+ * 
+ * fs：FSDirectory.open，由平台决定(64位JRE为MMapDirectory，否则为NIOFSDirectory或SimpleFSDirectory)；
+ * mmap：MMapDirectory，适合较大的、以读为主的索引，索引文件由操作系统页缓存，不占用Java堆；
+ * nio：NIOFSDirectory，多线程读同一文件时不加锁(Windows除外)；
+ * nrt：写入时使用NRTCachingDirectory，近实时搜索刷新的小段保存在内存中，合并或提交时再写入磁盘，搜索时与fs相同；
+ * ram：搜索时把整个索引复制到RAMDirectory，适合较小的热点表，索引超过RAM_MAX_BYTES时使用mmap，
+ * 索引改变后由SearcherPool.refresh重新复制，写入时与fs相同
+ * 
+ * 通过setMode按索引目录或表名设置，未设置时使用系统属性searchengine.directory，默认为fs
+ * 
+ * @author 石瑜
+ * 
+ */
+public class Directories {
+
+	public static final String FS = "fs";
+
+	public static final String MMAP = "mmap";
+
+	public static final String NIO = "nio";
+
+	public static final String NRT = "nrt";
+
+	public static final String RAM = "ram";
+
+	public static String DIRECTORY = System.getProperty("searchengine.directory", FS); // 未单独设置的索引使用的Directory
+
+	public static double NRT_MAX_MERGE_MB = 5; // nrt模式下，合并后小于此MB数的段保存在内存中
+
+	public static double NRT_MAX_CACHED_MB = 60; // nrt模式下，每个索引保存在内存中的最大MB数
+
+	public static long RAM_MAX_BYTES = 256L * 1024 * 1024; // ram模式下，复制到内存的最大索引字节数
+
+	// 索引目录绝对路径或表名 -> 模式
+	private static final ConcurrentHashMap<String, String> MODES = new ConcurrentHashMap<String, String>();
+
+	private Directories() {
+
+	}
+
+	/**
+	 * 设置索引使用的Directory
+	 * 
+	 * @param name
+	 *            索引目录绝对路径或表名，表名同时适用于该表的所有分片
+	 * @param mode
+	 *            fs、mmap、nio、nrt或ram，为null时取消设置
+	 */
+	public static void setMode(String name, String mode) {
+
+		if (mode == null) {
+
+			MODES.remove(name);
+
+		} else {
+
+			MODES.put(name, mode.trim().toLowerCase());
+
+		}
+
+	}
+
+	/**
+	 * 索引使用的Directory，依次按索引目录绝对路径、目录名、上级目录名(分片的表名)查找
+	 * 
+	 * @param indexPath
+	 *            索引目录
+	 * @return 模式
+	 */
+	public static String getMode(File indexPath) {
+
+		String mode = MODES.get(indexPath.getAbsolutePath());
+
+		if (mode == null) {
+
+			mode = MODES.get(indexPath.getName());
+
+		}
+
+		if (mode == null && indexPath.getName().startsWith(Shards.PREFIX) && indexPath.getParentFile() != null) {
+
+			mode = MODES.get(indexPath.getParentFile().getName());
+
+		}
+
+		return mode != null ? mode : DIRECTORY.trim().toLowerCase();
+
+	}
+
+	/**
+	 * 打开搜索使用的Directory
+	 * 
+	 * @param indexPath
+	 *            索引目录
+	 * @return Directory
+	 * @throws IOException
+	 */
+	public static Directory open(File indexPath) throws IOException {
+
+		return open(indexPath, false);
+
+	}
+
+	/**
+	 * 打开索引目录
+	 * 
+	 * @param indexPath
+	 *            索引目录
+	 * @param write
+	 *            是否用于IndexWriter
+	 * @return Directory
+	 * @throws IOException
+	 */
+	public static Directory open(File indexPath, boolean write) throws IOException {
+
+		String mode = getMode(indexPath);
+
+		if (MMAP.equals(mode)) {
+
+			return new MMapDirectory(indexPath);
+
+		}
+
+		if (NIO.equals(mode)) {
+
+			return new NIOFSDirectory(indexPath);
+
+		}
+
+		if (NRT.equals(mode) && write) {
+
+			return new NRTCachingDirectory(FSDirectory.open(indexPath), NRT_MAX_MERGE_MB, NRT_MAX_CACHED_MB);
+
+		}
+
+		if (RAM.equals(mode) && !write) {
+
+			if (size(indexPath) > RAM_MAX_BYTES) {
+
+				return new MMapDirectory(indexPath);
+
+			}
+
+			Directory dir = FSDirectory.open(indexPath);
+
+			try {
+
+				return new RAMDirectory(dir);
+
+			} finally {
+
+				dir.close();
+
+			}
+
+		}
+
+		return FSDirectory.open(indexPath);
+
+	}
+
+	/**
+	 * 索引目录中文件的总字节数
+	 */
+	static long size(File indexPath) {
+
+		long size = 0;
+
+		File[] files = indexPath.listFiles();
+
+		if (files != null) {
+
+			for (File file : files) {
+
+				if (file.isFile()) {
+
+					size += file.length();
+
+				}
+
+			}
+
+		}
+
+		return size;
+
+	}
+
+}
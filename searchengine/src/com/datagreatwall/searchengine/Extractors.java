@@ -0,0 +1,607 @@
+package com.datagreatwall.searchengine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import org.jsoup.Jsoup;
+
+/**
+ * 
+ * 共享的TextExtractor，索引数据库表及文件时提取HTML内容中的纯文本
+ * 
+ * 通过系统属性searchengine.extractor指定TextExtractor类名，未指定时使用FAST：
+ * 不含标签及字符实体的内容直接返回，否则顺序扫描一次去掉标签、解码字符实体，不构建DOM，
+ * 标签或注释没有结束等不规范的内容交给Jsoup处理
+ * 
+ * @author 石瑜
+ * 
+ */
+public class Extractors {
+
+	public static String EXTRACTOR = System.getProperty("searchengine.extractor"); // TextExtractor类名，为null时使用FAST
+
+	/**
+	 * 使用Jsoup构建DOM后提取纯文本
+	 */
+	public static final TextExtractor JSOUP = new TextExtractor() {
+
+		public String extract(String value) {
+
+			return Jsoup.parse(value).text();
+
+		}
+
+	};
+
+	/**
+	 * 顺序扫描去掉标签，不规范的内容使用Jsoup
+	 */
+	public static final TextExtractor FAST = new TextExtractor() {
+
+		public String extract(String value) {
+
+			if (!isHtml(value)) {
+
+				return value;
+
+			}
+
+			String text = strip(value);
+
+			return text != null ? text : Jsoup.parse(value).text();
+
+		}
+
+	};
+
+	private static volatile TextExtractor extractor = null;
+
+	// 内容不输出的标签
+	private static final HashSet<String> RAW = new HashSet<String>();
+
+	// 前后输出空格的标签
+	private static final HashSet<String> BLOCK = new HashSet<String>();
+
+	// 字符实体名 -> 字符
+	private static final HashMap<String, Integer> ENTITIES = new HashMap<String, Integer>();
+
+	static {
+
+		RAW.add("script");
+
+		RAW.add("style");
+
+		RAW.add("textarea");
+
+		String[] blocks = { "address", "article", "blockquote", "br", "dd", "div", "dl", "dt", "footer", "form", "h1", "h2", "h3", "h4", "h5", "h6", "header", "hr", "li", "nav", "ol", "option", "p", "pre", "section", "table", "td", "th", "title", "tr", "ul" };
+
+		for (int i = 0; i < blocks.length; i++) {
+
+			BLOCK.add(blocks[i]);
+
+		}
+
+		String[] names = { "amp", "lt", "gt", "quot", "apos", "nbsp", "copy", "reg", "trade", "middot", "bull", "hellip", "mdash", "ndash", "lsquo", "rsquo", "ldquo", "rdquo", "laquo", "raquo", "times", "divide", "deg", "yen", "sect", "para" };
+
+		int[] chars = { '&', '<', '>', '"', '\'', 0xA0, 0xA9, 0xAE, 0x2122, 0xB7, 0x2022, 0x2026, 0x2014, 0x2013, 0x2018, 0x2019, 0x201C, 0x201D, 0xAB, 0xBB, 0xD7, 0xF7, 0xB0, 0xA5, 0xA7, 0xB6 };
+
+		for (int i = 0; i < names.length; i++) {
+
+			ENTITIES.put(names[i], chars[i]);
+
+		}
+
+	}
+
+	private Extractors() {
+
+	}
+
+	/**
+	 * 比较FAST与JSOUP提取文档目录下文件纯文本的速度
+	 */
+	public static void main(String[] args) throws IOException {
+
+		String docsPath = args.length > 0 ? args[0] : "/news";
+
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		List<String> values = new ArrayList<String>();
+
+		long bytes = load(new File(docsPath), values);
+
+		System.out.println(docsPath + "\tfiles:\t" + values.size() + "\tbytes:\t" + bytes);
+
+		TextExtractor[] extractors = { JSOUP, FAST };
+
+		String[] names = { "jsoup", "fast" };
+
+		for (int r = 0; r < rounds; r++) {
+
+			for (int e = 0; e < extractors.length; e++) {
+
+				long start = System.nanoTime();
+
+				long chars = 0;
+
+				for (int i = 0; i < values.size(); i++) {
+
+					chars += extractors[e].extract(values.get(i)).length();
+
+				}
+
+				long time = System.nanoTime() - start;
+
+				System.out.println(String.format("%s\tround:\t%d\ttime:\t%d\tMB/sec:\t%.1f\tchars:\t%d", names[e], r, time / 1000000, bytes * 1000.0 / Math.max(1, time), chars));
+
+			}
+
+		}
+
+		// FAST与JSOUP提取结果(忽略空白)不同的文件数
+		int diff = 0;
+
+		for (int i = 0; i < values.size(); i++) {
+
+			String a = JSOUP.extract(values.get(i)).replaceAll("\\s+", "");
+
+			String b = FAST.extract(values.get(i)).replaceAll("\\s+", "");
+
+			if (!a.equals(b)) {
+
+				diff++;
+
+			}
+
+		}
+
+		System.out.println("diff:\t" + diff);
+
+	}
+
+	private static long load(File file, List<String> values) throws IOException {
+
+		if (file.isDirectory()) {
+
+			String[] files = file.list();
+
+			long bytes = 0;
+
+			for (int i = 0; files != null && i < files.length; i++) {
+
+				bytes += load(new File(file, files[i]), values);
+
+			}
+
+			return bytes;
+
+		}
+
+		if (!file.canRead()) {
+
+			return 0;
+
+		}
+
+		String value = FileContent.read(file, IndexFiles.MAX_FILE_SIZE);
+
+		values.add(value);
+
+		return Math.min(file.length(), IndexFiles.MAX_FILE_SIZE);
+
+	}
+
+	/**
+	 * 获取共享的TextExtractor
+	 * 
+	 * @return TextExtractor
+	 */
+	public static TextExtractor getExtractor() {
+
+		TextExtractor e = extractor;
+
+		if (e != null) {
+
+			return e;
+
+		}
+
+		synchronized (Extractors.class) {
+
+			if (extractor == null) {
+
+				extractor = newExtractor(EXTRACTOR);
+
+			}
+
+			return extractor;
+
+		}
+
+	}
+
+	/**
+	 * 设置共享的TextExtractor
+	 * 
+	 * @param e
+	 *            TextExtractor
+	 */
+	public static synchronized void setExtractor(TextExtractor e) {
+
+		extractor = e;
+
+	}
+
+	/**
+	 * 按类名创建TextExtractor，失败时使用FAST
+	 * 
+	 * @param className
+	 *            TextExtractor类名
+	 * @return TextExtractor
+	 */
+	public static TextExtractor newExtractor(String className) {
+
+		if (className != null && className.trim().length() > 0) {
+
+			try {
+
+				return (TextExtractor) Class.forName(className.trim()).newInstance();
+
+			} catch (Exception ex) {
+
+				ex.printStackTrace();
+
+			}
+
+		}
+
+		return FAST;
+
+	}
+
+	/**
+	 * 使用共享的TextExtractor提取纯文本
+	 * 
+	 * @param value
+	 *            HTML或纯文本内容
+	 * @return 纯文本内容
+	 */
+	public static String extract(String value) {
+
+		if (value == null) {
+
+			return null;
+
+		}
+
+		return getExtractor().extract(value);
+
+	}
+
+	/**
+	 * 判断内容是否可能含有HTML标签或字符实体，只检查'&lt;'及'&amp;'后面的一个字符
+	 * 
+	 * @param value
+	 *            内容
+	 * @return 是否可能是HTML
+	 */
+	public static boolean isHtml(String value) {
+
+		int n = value.length() - 1;
+
+		for (int i = 0; i < n; i++) {
+
+			char c = value.charAt(i);
+
+			if (c == '<') {
+
+				char next = value.charAt(i + 1);
+
+				if (isLetter(next) || next == '/' || next == '!' || next == '?') {
+
+					return true;
+
+				}
+
+			} else if (c == '&') {
+
+				char next = value.charAt(i + 1);
+
+				if (isLetter(next) || next == '#') {
+
+					return true;
+
+				}
+
+			}
+
+		}
+
+		return false;
+
+	}
+
+	/**
+	 * 顺序扫描去掉标签、注释及script/style的内容，解码字符实体，连续的空白合并为一个空格
+	 * 
+	 * @param value
+	 *            HTML内容
+	 * @return 纯文本内容，标签、注释没有结束时返回null
+	 */
+	public static String strip(String value) {
+
+		int n = value.length();
+
+		StringBuilder text = new StringBuilder(n);
+
+		boolean space = false; // 是否有等待输出的空格
+
+		int i = 0;
+
+		while (i < n) {
+
+			char c = value.charAt(i);
+
+			if (c == '<' && i + 1 < n && isTagStart(value.charAt(i + 1))) {
+
+				if (value.startsWith("<!--", i)) {
+
+					int end = value.indexOf("-->", i + 4);
+
+					if (end < 0) {
+
+						return null;
+
+					}
+
+					i = end + 3;
+
+					continue;
+
+				}
+
+				int end = tagEnd(value, i + 1);
+
+				if (end < 0) {
+
+					return null;
+
+				}
+
+				boolean closing = value.charAt(i + 1) == '/';
+
+				String name = tagName(value, closing ? i + 2 : i + 1, end);
+
+				if (!closing && RAW.contains(name) && value.charAt(end - 1) != '/') {
+
+					// 跳过内容直到结束标签
+					int close = indexOfIgnoreCase(value, "</" + name, end + 1);
+
+					if (close < 0) {
+
+						return null;
+
+					}
+
+					end = tagEnd(value, close + 1);
+
+					if (end < 0) {
+
+						return null;
+
+					}
+
+				}
+
+				if (BLOCK.contains(name)) {
+
+					space = true;
+
+				}
+
+				i = end + 1;
+
+				continue;
+
+			}
+
+			int codePoint = c;
+
+			int next = i + 1;
+
+			if (c == '&') {
+
+				int semi = entityEnd(value, i + 1);
+
+				int decoded = semi < 0 ? -1 : decode(value.substring(i + 1, semi));
+
+				if (decoded >= 0) {
+
+					codePoint = decoded;
+
+					next = semi + 1;
+
+				}
+
+			}
+
+			if (isWhitespace(codePoint)) {
+
+				space = true;
+
+			} else {
+
+				if (space && text.length() > 0) {
+
+					text.append(' ');
+
+				}
+
+				space = false;
+
+				text.appendCodePoint(codePoint);
+
+			}
+
+			i = next;
+
+		}
+
+		return text.toString();
+
+	}
+
+	private static boolean isLetter(char c) {
+
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+
+	}
+
+	private static boolean isTagStart(char c) {
+
+		return isLetter(c) || c == '/' || c == '!' || c == '?';
+
+	}
+
+	private static boolean isWhitespace(int c) {
+
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+
+	}
+
+	/**
+	 * 标签结束的'&gt;'位置，跳过属性值中的引号内容，没有结束时返回-1
+	 */
+	private static int tagEnd(String value, int from) {
+
+		char quote = 0;
+
+		for (int i = from; i < value.length(); i++) {
+
+			char c = value.charAt(i);
+
+			if (quote != 0) {
+
+				if (c == quote) {
+
+					quote = 0;
+
+				}
+
+			} else if (c == '"' || c == '\'') {
+
+				// 只有属性值中的引号，即'='之后的引号，才成对跳过
+				if (i > from && value.charAt(i - 1) == '=') {
+
+					quote = c;
+
+				}
+
+			} else if (c == '>') {
+
+				return i;
+
+			}
+
+		}
+
+		return -1;
+
+	}
+
+	/**
+	 * 小写的标签名
+	 */
+	private static String tagName(String value, int from, int end) {
+
+		int i = from;
+
+		while (i < end && (isLetter(value.charAt(i)) || Character.isDigit(value.charAt(i)))) {
+
+			i++;
+
+		}
+
+		return value.substring(from, i).toLowerCase();
+
+	}
+
+	private static int indexOfIgnoreCase(String value, String str, int from) {
+
+		int n = value.length() - str.length();
+
+		for (int i = from; i <= n; i++) {
+
+			if (value.regionMatches(true, i, str, 0, str.length())) {
+
+				return i;
+
+			}
+
+		}
+
+		return -1;
+
+	}
+
+	/**
+	 * 字符实体结束的';'位置，不是字符实体时返回-1
+	 */
+	private static int entityEnd(String value, int from) {
+
+		int max = Math.min(value.length(), from + 10);
+
+		for (int i = from; i < max; i++) {
+
+			char c = value.charAt(i);
+
+			if (c == ';') {
+
+				return i > from ? i : -1;
+
+			}
+
+			if (!isLetter(c) && !Character.isDigit(c) && !(c == '#' && i == from)) {
+
+				return -1;
+
+			}
+
+		}
+
+		return -1;
+
+	}
+
+	/**
+	 * 解码字符实体，如amp、#38、#x26，无法解码时返回-1
+	 */
+	private static int decode(String entity) {
+
+		if (entity.charAt(0) == '#') {
+
+			try {
+
+				int c = entity.length() > 1 && (entity.charAt(1) == 'x' || entity.charAt(1) == 'X') ? Integer.parseInt(entity.substring(2), 16) : Integer.parseInt(entity.substring(1));
+
+				return Character.isValidCodePoint(c) ? c : -1;
+
+			} catch (NumberFormatException ex) {
+
+				return -1;
+
+			}
+
+		}
+
+		Integer c = ENTITIES.get(entity);
+
+		return c != null ? c : -1;
+
+	}
+
+}
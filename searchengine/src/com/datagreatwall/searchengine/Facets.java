@@ -0,0 +1,448 @@
+package com.datagreatwall.searchengine;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.util.Bits;
+
+/**
+ * 
+ * 统计项，SearchTable搜索时与前top条结果在同一次遍历中统计全部符合条件的文档
+ * 
+ * values：按值计数，字段为IndexTable索引的keyword列(FieldTypes)，每个文档一个值，结果按数量从多到少排列；
+ * ranges：按区间计数，字段为long列，如价格区间，结果按区间顺序排列
+ * 
+ * 每个段通过FieldCache.getStringIndex取得文档的值序号数组(或getLongs取得数字数组)，计数时只累加序号对应的整数，
+ * 段结束时再按值合并，FieldCache按段缓存，索引重新打开后未改变的段继续使用
+ * 
+ * @author 石瑜
+ * 
+ */
+public class Facets {
+
+	private final String field;
+
+	private final long[] bounds;
+
+	private Facets(String field, long[] bounds) {
+
+		this.field = field;
+
+		this.bounds = bounds;
+
+	}
+
+	/**
+	 * 按值计数
+	 * 
+	 * @param field
+	 *            keyword列名，如分类
+	 * @return Facets
+	 */
+	public static Facets values(String field) {
+
+		return new Facets(field.trim().toLowerCase(), null);
+
+	}
+
+	/**
+	 * 按区间计数，第i个区间为[bounds[i], bounds[i + 1])，不在任何区间内的值不计数；
+	 * 第一个边界为Long.MIN_VALUE或最后一个边界为Long.MAX_VALUE时表示不限制
+	 * 
+	 * @param field
+	 *            long列名，如价格
+	 * @param bounds
+	 *            从小到大的区间边界，至少两个
+	 * @return Facets
+	 */
+	public static Facets ranges(String field, long... bounds) {
+
+		if (bounds.length < 2) {
+
+			throw new IllegalArgumentException("at least two bounds: " + Arrays.toString(bounds));
+
+		}
+
+		long[] sorted = bounds.clone();
+
+		Arrays.sort(sorted);
+
+		return new Facets(field.trim().toLowerCase(), sorted);
+
+	}
+
+	/**
+	 * 字段名(小写)
+	 */
+	public String getField() {
+
+		return field;
+
+	}
+
+	/**
+	 * 是否按区间计数
+	 */
+	public boolean isRanges() {
+
+		return bounds != null;
+
+	}
+
+	/**
+	 * 用于SearchTable的结果缓存键
+	 */
+	public String toString() {
+
+		return bounds == null ? "values\u0001" + field : "ranges\u0001" + field + "\u0001" + Arrays.toString(bounds);
+
+	}
+
+	/**
+	 * 区间的名称，如[100,500)、[1000,)
+	 */
+	private String label(int band) {
+
+		long min = bounds[band];
+
+		long max = bounds[band + 1];
+
+		return "[" + (min == Long.MIN_VALUE ? "" : String.valueOf(min)) + "," + (max == Long.MAX_VALUE ? "" : String.valueOf(max)) + ")";
+
+	}
+
+	/**
+	 * 值所在的区间，不在任何区间内时返回-1
+	 */
+	private int band(long value) {
+
+		int i = Arrays.binarySearch(bounds, value);
+
+		int band = i >= 0 ? i : -i - 2;
+
+		return band >= 0 && band < bounds.length - 1 ? band : -1;
+
+	}
+
+	/**
+	 * 各统计项的空结果，区间按顺序预先放入
+	 */
+	private static List<Map<String, Integer>> empty(Facets[] facets) {
+
+		List<Map<String, Integer>> sums = new ArrayList<Map<String, Integer>>(facets.length);
+
+		for (int i = 0; i < facets.length; i++) {
+
+			if (facets[i].bounds == null) {
+
+				sums.add(new HashMap<String, Integer>());
+
+			} else {
+
+				Map<String, Integer> sum = new LinkedHashMap<String, Integer>();
+
+				for (int j = 0; j < facets[i].bounds.length - 1; j++) {
+
+					sum.put(facets[i].label(j), 0);
+
+				}
+
+				sums.add(sum);
+
+			}
+
+		}
+
+		return sums;
+
+	}
+
+	private static void add(Map<String, Integer> sum, String value, int count) {
+
+		Integer n = sum.get(value);
+
+		sum.put(value, n == null ? count : n + count);
+
+	}
+
+	/**
+	 * 生成统计结果，字段名 -> (值或区间 -> 数量)，按值计数的按数量从多到少排列
+	 */
+	private static Map<String, Map<String, Integer>> result(Facets[] facets, List<Map<String, Integer>> sums) {
+
+		Map<String, Map<String, Integer>> result = new LinkedHashMap<String, Map<String, Integer>>();
+
+		for (int i = 0; i < facets.length; i++) {
+
+			if (facets[i].bounds != null) {
+
+				result.put(facets[i].field, sums.get(i));
+
+				continue;
+
+			}
+
+			List<Map.Entry<String, Integer>> entries = new ArrayList<Map.Entry<String, Integer>>(sums.get(i).entrySet());
+
+			Collections.sort(entries, new Comparator<Map.Entry<String, Integer>>() {
+
+				public int compare(Map.Entry<String, Integer> e1, Map.Entry<String, Integer> e2) {
+
+					int c = e2.getValue().compareTo(e1.getValue());
+
+					return c != 0 ? c : e1.getKey().compareTo(e2.getKey());
+
+				}
+
+			});
+
+			Map<String, Integer> counts = new LinkedHashMap<String, Integer>();
+
+			for (Map.Entry<String, Integer> entry : entries) {
+
+				counts.put(entry.getKey(), entry.getValue());
+
+			}
+
+			result.put(facets[i].field, counts);
+
+		}
+
+		return result;
+
+	}
+
+	/**
+	 * 合并各分片的统计结果
+	 * 
+	 * @param facets
+	 *            统计项
+	 * @param results
+	 *            各分片的SearchResult
+	 * @return 统计结果
+	 */
+	static Map<String, Map<String, Integer>> merge(Facets[] facets, SearchResult[] results) {
+
+		List<Map<String, Integer>> sums = empty(facets);
+
+		for (SearchResult result : results) {
+
+			if (result == null || result.getFacets() == null) {
+
+				continue;
+
+			}
+
+			for (int i = 0; i < facets.length; i++) {
+
+				Map<String, Integer> counts = result.getFacets().get(facets[i].field);
+
+				if (counts == null) {
+
+					continue;
+
+				}
+
+				for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+
+					add(sums.get(i), entry.getKey(), entry.getValue());
+
+				}
+
+			}
+
+		}
+
+		return result(facets, sums);
+
+	}
+
+	/**
+	 * 统计全部符合条件的文档，与收集前top条结果的Collector一起使用(MultiCollector)
+	 * 
+	 * 每个按值计数的统计项使用一个按序号计数的整数数组，各段重复使用，段结束时把非零的计数按值合并并清零
+	 */
+	static class Counter extends Collector {
+
+		private final Facets[] facets;
+
+		private final List<Map<String, Integer>> sums;
+
+		private final int[][] counts;
+
+		private final int[][] orders;
+
+		private final String[][] lookups;
+
+		private final long[][] longs;
+
+		private final Bits[] docsWithField;
+
+		Counter(Facets[] facets) {
+
+			this.facets = facets;
+
+			sums = empty(facets);
+
+			counts = new int[facets.length][];
+
+			orders = new int[facets.length][];
+
+			lookups = new String[facets.length][];
+
+			longs = new long[facets.length][];
+
+			docsWithField = new Bits[facets.length];
+
+			for (int i = 0; i < facets.length; i++) {
+
+				if (facets[i].bounds != null) {
+
+					counts[i] = new int[facets[i].bounds.length - 1];
+
+				}
+
+			}
+
+		}
+
+		public void setScorer(Scorer scorer) {
+
+		}
+
+		public void collect(int doc) {
+
+			for (int i = 0; i < facets.length; i++) {
+
+				if (orders[i] != null) {
+
+					counts[i][orders[i][doc]]++;
+
+				} else if (longs[i] != null && docsWithField[i].get(doc)) {
+
+					int band = facets[i].band(longs[i][doc]);
+
+					if (band >= 0) {
+
+						counts[i][band]++;
+
+					}
+
+				}
+
+			}
+
+		}
+
+		public void setNextReader(IndexReader reader, int docBase) throws IOException {
+
+			fold();
+
+			for (int i = 0; i < facets.length; i++) {
+
+				if (facets[i].bounds != null) {
+
+					longs[i] = FieldCache.DEFAULT.getLongs(reader, facets[i].field, FieldCache.NUMERIC_UTILS_LONG_PARSER);
+
+					docsWithField[i] = FieldCache.DEFAULT.getDocsWithField(reader, facets[i].field);
+
+					continue;
+
+				}
+
+				FieldCache.StringIndex index = FieldCache.DEFAULT.getStringIndex(reader, facets[i].field);
+
+				orders[i] = index.order;
+
+				lookups[i] = index.lookup;
+
+				if (counts[i] == null || counts[i].length < index.lookup.length) {
+
+					counts[i] = new int[index.lookup.length];
+
+				}
+
+			}
+
+		}
+
+		public boolean acceptsDocsOutOfOrder() {
+
+			return true;
+
+		}
+
+		/**
+		 * 把上一个段按序号的计数按值合并，序号0为没有值的文档
+		 */
+		private void fold() {
+
+			for (int i = 0; i < facets.length; i++) {
+
+				if (lookups[i] == null) {
+
+					continue;
+
+				}
+
+				for (int j = 1; j < lookups[i].length; j++) {
+
+					if (counts[i][j] > 0) {
+
+						add(sums.get(i), lookups[i][j], counts[i][j]);
+
+						counts[i][j] = 0;
+
+					}
+
+				}
+
+				counts[i][0] = 0;
+
+				orders[i] = null;
+
+				lookups[i] = null;
+
+			}
+
+		}
+
+		/**
+		 * 统计结果，字段名 -> (值或区间 -> 数量)
+		 */
+		Map<String, Map<String, Integer>> getCounts() {
+
+			fold();
+
+			for (int i = 0; i < facets.length; i++) {
+
+				if (facets[i].bounds != null) {
+
+					for (int j = 0; j < counts[i].length; j++) {
+
+						sums.get(i).put(facets[i].label(j), counts[i][j]);
+
+					}
+
+				}
+
+			}
+
+			return result(facets, sums);
+
+		}
+
+	}
+
+}
@@ -0,0 +1,136 @@
+package com.datagreatwall.searchengine;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.Fieldable;
+import org.apache.lucene.document.NumericField;
+import org.apache.lucene.index.FieldInfo.IndexOptions;
+
+/**
+ * 
+ * IndexTable索引列的方式，按表名和列名设置，不同表的同名列互不影响
+ * 
+ * text：HTML转换为纯文本后分词索引，用于关键字搜索(默认)；
+ * keyword：不分词，整个值作为一个词，用于Filters.term/terms过滤及Facets.values按值统计；
+ * long、double：NumericField，用于Filters.range/doubleRange范围过滤，long列可用于Facets.ranges按区间统计，值不是数字时不索引该列
+ * 
+ * 修改列的索引方式后需要重新建索引
+ * 
+ * @author 石瑜
+ * 
+ */
+public class FieldTypes {
+
+	public static final String TEXT = "text";
+
+	public static final String KEYWORD = "keyword";
+
+	public static final String LONG = "long";
+
+	public static final String DOUBLE = "double";
+
+	// 表名.列名(小写) -> 索引方式
+	private static final ConcurrentHashMap<String, String> TYPES = new ConcurrentHashMap<String, String>();
+
+	private FieldTypes() {
+
+	}
+
+	/**
+	 * 设置列的索引方式
+	 * 
+	 * @param table
+	 *            表名
+	 * @param colName
+	 *            列名
+	 * @param type
+	 *            text、keyword、long或double，为null时恢复为text
+	 */
+	public static void setType(String table, String colName, String type) {
+
+		if (type == null) {
+
+			TYPES.remove(key(table, colName));
+
+		} else {
+
+			TYPES.put(key(table, colName), type.trim().toLowerCase());
+
+		}
+
+	}
+
+	/**
+	 * 列的索引方式
+	 * 
+	 * @param table
+	 *            表名，为null时返回text
+	 * @param colName
+	 *            列名
+	 * @return 索引方式，未设置时为text
+	 */
+	public static String getType(String table, String colName) {
+
+		String type = table != null ? TYPES.get(key(table, colName)) : null;
+
+		return type != null ? type : TEXT;
+
+	}
+
+	private static String key(String table, String colName) {
+
+		return table.trim().toLowerCase() + "." + colName.trim().toLowerCase();
+
+	}
+
+	/**
+	 * 生成不分词或数字列的字段
+	 * 
+	 * @param colName
+	 *            列名(小写)
+	 * @param type
+	 *            keyword、long或double
+	 * @param colValue
+	 *            列值
+	 * @return Fieldable，值不是数字时返回null
+	 */
+	static Fieldable field(String colName, String type, String colValue) {
+
+		colValue = colValue.trim();
+
+		if (KEYWORD.equals(type)) {
+
+			Field field = new Field(colName, colValue, Field.Store.NO, Field.Index.NOT_ANALYZED_NO_NORMS);
+
+			field.setIndexOptions(IndexOptions.DOCS_ONLY);
+
+			return field;
+
+		}
+
+		try {
+
+			if (LONG.equals(type)) {
+
+				return new NumericField(colName).setLongValue(Long.parseLong(colValue));
+
+			}
+
+			if (DOUBLE.equals(type)) {
+
+				return new NumericField(colName).setDoubleValue(Double.parseDouble(colValue));
+
+			}
+
+		} catch (NumberFormatException ex) {
+
+			return null;
+
+		}
+
+		return null;
+
+	}
+
+}
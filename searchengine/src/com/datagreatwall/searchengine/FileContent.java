@@ -0,0 +1,300 @@
+package com.datagreatwall.searchengine;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * 
+ * 读取文件内容，限制每个文件使用的内存
+ * 
+ * 文件读入每个线程重用的直接缓冲区，解码到每个线程重用的字符缓冲区，缓冲区最大为MAX_BUFFER_SIZE，
+ * 更大的文件分块读取并解码，每个线程保留的缓冲区不随文件大小增长，也不使用内存映射；
+ * 超过最大字节数的部分不读取；纯文本文件可以通过Reader流式读取
+ * 
+ * @author 石瑜
+ * 
+ */
+public class FileContent {
+
+	public static int MAX_BUFFER_SIZE = 1024 * 1024; // 每个线程缓冲区的最大字节数，更大的文件分块读取
+
+	public static int BUFFER_SIZE = 64 * 1024; // 每个线程缓冲区的初始字节数
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final ThreadLocal<ByteBuffer> BYTES = new ThreadLocal<ByteBuffer>();
+
+	private static final ThreadLocal<CharBuffer> CHARS = new ThreadLocal<CharBuffer>();
+
+	private static final ThreadLocal<CharsetDecoder> DECODER = new ThreadLocal<CharsetDecoder>() {
+
+		protected CharsetDecoder initialValue() {
+
+			return UTF8.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+		}
+
+	};
+
+	private FileContent() {
+
+	}
+
+	/**
+	 * 读取文件内容(UTF-8)，最多读取maxBytes字节
+	 * 
+	 * @param file
+	 *            文件
+	 * @param maxBytes
+	 *            最多读取的字节数
+	 * @return 文件内容
+	 * @throws IOException
+	 */
+	public static String read(File file, long maxBytes) throws IOException {
+
+		long length = Math.min(file.length(), Math.min(maxBytes, Integer.MAX_VALUE));
+
+		int size = (int) Math.min(length, Math.max(MAX_BUFFER_SIZE, BUFFER_SIZE));
+
+		FileInputStream fis = new FileInputStream(file);
+
+		try {
+
+			FileChannel channel = fis.getChannel();
+
+			ByteBuffer in = bytes(size);
+
+			// UTF-8解码后的字符数不会超过字节数
+			CharBuffer out = chars(size);
+
+			CharsetDecoder decoder = DECODER.get();
+
+			decoder.reset();
+
+			// 文件大于缓冲区时逐块追加，只有一块时直接返回
+			StringBuilder text = null;
+
+			long remain = length;
+
+			while (true) {
+
+				// 一次read可能没有读满，读到文件结束、缓冲区满或读够length字节为止
+				while (in.hasRemaining() && remain > 0) {
+
+					if (in.remaining() > remain) {
+
+						in.limit(in.position() + (int) remain);
+
+					}
+
+					int n = channel.read(in);
+
+					if (n < 0) {
+
+						remain = 0;
+
+						break;
+
+					}
+
+					remain -= n;
+
+				}
+
+				in.flip();
+
+				boolean last = remain <= 0;
+
+				// 块末尾不完整的多字节字符留在in中，与下一块一起解码
+				decoder.decode(in, out, last);
+
+				if (last) {
+
+					decoder.flush(out);
+
+				}
+
+				out.flip();
+
+				if (last && text == null) {
+
+					return out.toString();
+
+				}
+
+				if (text == null) {
+
+					text = new StringBuilder((int) length);
+
+				}
+
+				text.append(out);
+
+				if (last) {
+
+					return text.toString();
+
+				}
+
+				out.clear();
+
+				in.compact();
+
+			}
+
+		} finally {
+
+			fis.close();
+
+		}
+
+	}
+
+	/**
+	 * 以Reader流式读取文件内容(UTF-8)，最多读取maxBytes字节，使用完毕后必须关闭
+	 * 
+	 * @param file
+	 *            文件
+	 * @param maxBytes
+	 *            最多读取的字节数
+	 * @return Reader
+	 * @throws IOException
+	 */
+	public static Reader reader(File file, long maxBytes) throws IOException {
+
+		InputStream in = new LimitedInputStream(new FileInputStream(file), maxBytes);
+
+		return new BufferedReader(new InputStreamReader(in, UTF8), BUFFER_SIZE);
+
+	}
+
+	/**
+	 * 当前线程的直接缓冲区，容量不足时重新分配
+	 */
+	private static ByteBuffer bytes(int size) {
+
+		ByteBuffer buffer = BYTES.get();
+
+		if (buffer == null || buffer.capacity() < size) {
+
+			buffer = ByteBuffer.allocateDirect(Math.max(size, BUFFER_SIZE));
+
+			BYTES.set(buffer);
+
+		}
+
+		buffer.clear();
+
+		buffer.limit(size);
+
+		return buffer;
+
+	}
+
+	/**
+	 * 当前线程的字符缓冲区，容量不足时重新分配
+	 */
+	private static CharBuffer chars(int size) {
+
+		CharBuffer buffer = CHARS.get();
+
+		if (buffer == null || buffer.capacity() < size) {
+
+			buffer = CharBuffer.allocate(Math.max(size, BUFFER_SIZE));
+
+			CHARS.set(buffer);
+
+		}
+
+		buffer.clear();
+
+		return buffer;
+
+	}
+
+	/**
+	 * 最多读取指定字节数的InputStream
+	 */
+	private static class LimitedInputStream extends FilterInputStream {
+
+		private long remain;
+
+		LimitedInputStream(InputStream in, long limit) {
+
+			super(in);
+
+			this.remain = limit;
+
+		}
+
+		public int read() throws IOException {
+
+			if (remain <= 0) {
+
+				return -1;
+
+			}
+
+			int b = super.read();
+
+			if (b >= 0) {
+
+				remain--;
+
+			}
+
+			return b;
+
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+
+			if (remain <= 0) {
+
+				return -1;
+
+			}
+
+			int n = super.read(b, off, (int) Math.min(len, remain));
+
+			if (n > 0) {
+
+				remain -= n;
+
+			}
+
+			return n;
+
+		}
+
+		public long skip(long n) throws IOException {
+
+			long skipped = super.skip(Math.min(n, remain));
+
+			remain -= skipped;
+
+			return skipped;
+
+		}
+
+		public int available() throws IOException {
+
+			return (int) Math.min(super.available(), remain);
+
+		}
+
+	}
+
+}
@@ -0,0 +1,423 @@
+package com.datagreatwall.searchengine;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.CachingWrapperFilter;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.NumericRangeFilter;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryWrapperFilter;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.OpenBitSet;
+
+/**
+ * 
+ * 共享的过滤条件，SearchFiles和SearchTable共用
+ * 
+ * 不分词字段的值(term、terms)，数字字段的范围(range、doubleRange)，字段由IndexFiles或IndexTable(FieldTypes)索引；
+ * 相同条件使用同一个CachingWrapperFilter，每个段的匹配文档位集在第一次使用时生成并缓存，
+ * 索引重新打开后未改变的段继续使用已生成的位集；位集的估计字节数(每个段约maxDoc / 8)之和超过MAX_BYTES时按最近最少使用淘汰条件，
+ * 已不再使用的段的位集仍计入所属条件，直到该条件被淘汰
+ * 
+ * 相对当前时间的范围(recent)不放入缓存：开始时间按TIME_BUCKET取整的范围作为缓存的条件，
+ * 每次搜索再从其位集中去掉取整开始时间到实际开始时间之间的文档，因此每个时间字段每TIME_BUCKET毫秒只增加一个缓存的条件
+ * 
+ * @author 石瑜
+ * 
+ */
+public class Filters {
+
+	public static long MAX_BYTES = Long.getLong("searchengine.filters.bytes", 32L * 1024 * 1024); // 缓存的位集最大字节数(估计值)，小于1时不缓存
+
+	public static long TIME_GRANULARITY = 60000; // 相对当前时间的时间范围按此毫秒数取整，同一区间内的搜索结果缓存键相同
+
+	public static long TIME_BUCKET = 3600000; // 相对当前时间的时间范围中缓存位集的部分的开始时间按此毫秒数取整
+
+	private static final LinkedHashMap<String, Cached> FILTERS = new LinkedHashMap<String, Cached>(64, 0.75f, true);
+
+	private static long bytes = 0; // 缓存的条件的位集估计字节数之和
+
+	private Filters() {
+
+	}
+
+	/**
+	 * 数字字段的范围
+	 * 
+	 * @param field
+	 *            字段名，如IndexFiles的time或size
+	 * @param min
+	 *            最小值(包括)，为null时不限制
+	 * @param max
+	 *            最大值(包括)，为null时不限制
+	 * @return 缓存的Filter
+	 */
+	public static Filter range(String field, Long min, Long max) {
+
+		field = field.toLowerCase();
+
+		String key = "range\u0001" + field + "\u0001" + min + "\u0001" + max;
+
+		Filter filter = get(key);
+
+		return filter != null ? filter : put(key, NumericRangeFilter.newLongRange(field, min, max, true, true));
+
+	}
+
+	/**
+	 * 浮点数字段的范围
+	 * 
+	 * @param field
+	 *            字段名
+	 * @param min
+	 *            最小值(包括)，为null时不限制
+	 * @param max
+	 *            最大值(包括)，为null时不限制
+	 * @return 缓存的Filter
+	 */
+	public static Filter doubleRange(String field, Double min, Double max) {
+
+		field = field.toLowerCase();
+
+		String key = "doubleRange\u0001" + field + "\u0001" + min + "\u0001" + max;
+
+		Filter filter = get(key);
+
+		return filter != null ? filter : put(key, NumericRangeFilter.newDoubleRange(field, min, max, true, true));
+
+	}
+
+	/**
+	 * 不分词字段等于指定值，如分类、状态、店铺编号
+	 * 
+	 * @param field
+	 *            字段名
+	 * @param value
+	 *            值
+	 * @return 缓存的Filter
+	 */
+	public static Filter term(String field, String value) {
+
+		return terms(field, value);
+
+	}
+
+	/**
+	 * 不分词字段等于任一指定值
+	 * 
+	 * @param field
+	 *            字段名
+	 * @param values
+	 *            值
+	 * @return 缓存的Filter
+	 */
+	public static Filter terms(String field, String... values) {
+
+		field = field.toLowerCase();
+
+		String[] sorted = values.clone();
+
+		Arrays.sort(sorted);
+
+		String key = "terms\u0001" + field + "\u0001" + Arrays.toString(sorted);
+
+		Filter filter = get(key);
+
+		if (filter != null) {
+
+			return filter;
+
+		}
+
+		Query query = null;
+
+		if (sorted.length == 1) {
+
+			query = new TermQuery(new Term(field, sorted[0]));
+
+		} else {
+
+			BooleanQuery bq = new BooleanQuery(true);
+
+			for (int i = 0; i < sorted.length; i++) {
+
+				bq.add(new TermQuery(new Term(field, sorted[i])), Occur.SHOULD);
+
+			}
+
+			query = bq;
+
+		}
+
+		return put(key, new QueryWrapperFilter(query));
+
+	}
+
+	private static Filter get(String key) {
+
+		synchronized (FILTERS) {
+
+			return FILTERS.get(key);
+
+		}
+
+	}
+
+	/**
+	 * 缓存过滤条件，其他线程已经缓存相同条件时返回已缓存的；MAX_BYTES小于1时不放入缓存
+	 */
+	private static Filter put(String key, Filter filter) {
+
+		if (MAX_BYTES < 1) {
+
+			return new Cached(key, filter);
+
+		}
+
+		synchronized (FILTERS) {
+
+			Filter exists = FILTERS.get(key);
+
+			if (exists != null) {
+
+				return exists;
+
+			}
+
+			Cached cached = new Cached(key, filter);
+
+			FILTERS.put(key, cached);
+
+			return cached;
+
+		}
+
+	}
+
+	/**
+	 * 条件生成了一个段的位集，仍在缓存中时计入总字节数，超过MAX_BYTES时淘汰最久未使用的条件
+	 */
+	private static void grow(Cached filter, long size) {
+
+		synchronized (FILTERS) {
+
+			filter.bytes += size;
+
+			if (FILTERS.get(filter.key) != filter) {
+
+				return;
+
+			}
+
+			bytes += size;
+
+			Iterator<Map.Entry<String, Cached>> it = FILTERS.entrySet().iterator();
+
+			while (bytes > MAX_BYTES && it.hasNext()) {
+
+				bytes -= it.next().getValue().bytes;
+
+				it.remove();
+
+			}
+
+		}
+
+	}
+
+	/**
+	 * 缓存的位集估计字节数
+	 */
+	public static long getBytes() {
+
+		synchronized (FILTERS) {
+
+			return bytes;
+
+		}
+
+	}
+
+	/**
+	 * 最近一段时间，开始时间按TIME_GRANULARITY向下取整；
+	 * 返回的Filter不缓存，其中开始时间按TIME_BUCKET取整的部分使用缓存的range
+	 * 
+	 * @param field
+	 *            时间字段名(毫秒)
+	 * @param period
+	 *            毫秒数，如7天为7 * 24 * 3600 * 1000L
+	 * @return Filter
+	 */
+	public static Filter recent(String field, long period) {
+
+		field = field.toLowerCase();
+
+		long from = System.currentTimeMillis() - period;
+
+		if (TIME_GRANULARITY > 1) {
+
+			from -= from % TIME_GRANULARITY;
+
+		}
+
+		long bucket = from;
+
+		if (TIME_BUCKET > 1) {
+
+			bucket -= bucket % TIME_BUCKET;
+
+		}
+
+		Filter cached = range(field, bucket, null);
+
+		if (bucket == from) {
+
+			return cached;
+
+		}
+
+		return new Recent("range\u0001" + field + "\u0001" + from + "\u0001null", cached, NumericRangeFilter.newLongRange(field, bucket, from, true, false));
+
+	}
+
+	/**
+	 * 清空缓存的过滤条件
+	 */
+	public static void clear() {
+
+		synchronized (FILTERS) {
+
+			FILTERS.clear();
+
+			bytes = 0;
+
+		}
+
+	}
+
+	/**
+	 * 缓存的范围去掉开始部分，每个段的位集在搜索时生成，不缓存；toString与相同范围的range相同
+	 */
+	private static class Recent extends Filter {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String key;
+
+		private final Filter cached;
+
+		private final Filter exclude;
+
+		Recent(String key, Filter cached, Filter exclude) {
+
+			this.key = key;
+
+			this.cached = cached;
+
+			this.exclude = exclude;
+
+		}
+
+		public DocIdSet getDocIdSet(IndexReader reader) throws IOException {
+
+			DocIdSet set = cached.getDocIdSet(reader);
+
+			DocIdSetIterator it = set != null ? set.iterator() : null;
+
+			if (it == null) {
+
+				return null;
+
+			}
+
+			FixedBitSet bits = new FixedBitSet(reader.maxDoc());
+
+			bits.or(it);
+
+			DocIdSet excluded = exclude.getDocIdSet(reader);
+
+			it = excluded != null ? excluded.iterator() : null;
+
+			if (it != null) {
+
+				bits.andNot(it);
+
+			}
+
+			return bits;
+
+		}
+
+		public String toString() {
+
+			return key;
+
+		}
+
+	}
+
+	/**
+	 * 缓存每个段的位集，toString返回条件，用于SearchTable的结果缓存键
+	 */
+	private static class Cached extends CachingWrapperFilter {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String key;
+
+		private long bytes = 0; // 已生成的位集估计字节数，由Filters.FILTERS同步
+
+		Cached(String key, Filter filter) {
+
+			super(filter);
+
+			this.key = key;
+
+		}
+
+		protected DocIdSet docIdSetToCache(DocIdSet docIdSet, IndexReader reader) throws IOException {
+
+			DocIdSet set = super.docIdSetToCache(docIdSet, reader);
+
+			long size = 0;
+
+			if (set instanceof FixedBitSet) {
+
+				size = ((FixedBitSet) set).getBits().length * 8L;
+
+			} else if (set instanceof OpenBitSet) {
+
+				size = ((OpenBitSet) set).getBits().length * 8L;
+
+			} else if (set != DocIdSet.EMPTY_DOCIDSET) {
+
+				size = reader.maxDoc() / 8 + 1;
+
+			}
+
+			grow(this, size);
+
+			return set;
+
+		}
+
+		public String toString() {
+
+			return key;
+
+		}
+
+	}
+
+}
@@ -0,0 +1,187 @@
+package com.datagreatwall.searchengine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 
+ * 数值分布统计(如延迟纳秒数、命中数)，无锁，每个2的幂区间分为4个桶，百分位数的误差不超过25%
+ * 
+ * @author 石瑜
+ * 
+ */
+public class Histogram {
+
+	private static final int BUCKETS = 4 + 61 * 4;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	private final AtomicLong count = new AtomicLong();
+
+	private final AtomicLong sum = new AtomicLong();
+
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * 记录一个值，小于0时按0记录
+	 * 
+	 * @param value
+	 *            值
+	 */
+	public void record(long value) {
+
+		if (value < 0) {
+
+			value = 0;
+
+		}
+
+		counts.incrementAndGet(bucket(value));
+
+		count.incrementAndGet();
+
+		sum.addAndGet(value);
+
+		long m = max.get();
+
+		while (value > m && !max.compareAndSet(m, value)) {
+
+			m = max.get();
+
+		}
+
+	}
+
+	public long getCount() {
+
+		return count.get();
+
+	}
+
+	public long getSum() {
+
+		return sum.get();
+
+	}
+
+	public long getMax() {
+
+		return max.get();
+
+	}
+
+	public double getMean() {
+
+		long c = count.get();
+
+		return c == 0 ? 0 : (double) sum.get() / c;
+
+	}
+
+	/**
+	 * 百分位数，返回所在桶的上限(不超过最大值)
+	 * 
+	 * @param percentile
+	 *            百分位，0到100
+	 * @return 百分位数
+	 */
+	public long getPercentile(double percentile) {
+
+		long total = count.get();
+
+		if (total == 0) {
+
+			return 0;
+
+		}
+
+		long rank = (long) Math.ceil(total * percentile / 100);
+
+		long seen = 0;
+
+		for (int i = 0; i < BUCKETS; i++) {
+
+			seen += counts.get(i);
+
+			if (seen >= rank && seen > 0) {
+
+				return Math.min(upper(i), max.get());
+
+			}
+
+		}
+
+		return max.get();
+
+	}
+
+	/**
+	 * 清空统计
+	 */
+	public void reset() {
+
+		for (int i = 0; i < BUCKETS; i++) {
+
+			counts.set(i, 0);
+
+		}
+
+		count.set(0);
+
+		sum.set(0);
+
+		max.set(0);
+
+	}
+
+	public String toString() {
+
+		return String.format("count:\t%d\tmean:\t%.1f\tp50:\t%d\tp90:\t%d\tp99:\t%d\tmax:\t%d", getCount(), getMean(), getPercentile(50), getPercentile(90), getPercentile(99), getMax());
+
+	}
+
+	/**
+	 * 值所在的桶：0到3各一个桶，之后每个2的幂区间4个桶
+	 */
+	static int bucket(long value) {
+
+		if (value < 4) {
+
+			return (int) value;
+
+		}
+
+		int exp = 63 - Long.numberOfLeadingZeros(value);
+
+		int sub = (int) (value >>> (exp - 2)) & 3;
+
+		return 4 + (exp - 2) * 4 + sub;
+
+	}
+
+	/**
+	 * 桶的上限
+	 */
+	static long upper(int bucket) {
+
+		if (bucket < 4) {
+
+			return bucket;
+
+		}
+
+		int exp = (bucket - 4) / 4 + 2;
+
+		int sub = (bucket - 4) % 4;
+
+		if (exp >= 62 && sub == 3) {
+
+			return Long.MAX_VALUE;
+
+		}
+
+		return ((5L + sub) << (exp - 2)) - 1;
+
+	}
+
+}
@@ -2,23 +2,32 @@ package com.datagreatwall.searchengine;
 
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
-import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.cn.smart.SmartChineseAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.NumericField;
 import org.apache.lucene.index.FieldInfo.IndexOptions;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.IndexWriterConfig.OpenMode;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.search.FieldCache;
 import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.ReaderUtil;
 import org.apache.lucene.util.Version;
-import org.jsoup.Jsoup;
 
 /**
  * 索引文本或HTML文件
@@ -28,6 +37,20 @@ import org.jsoup.Jsoup;
  */
 public class IndexFiles {
 
+	public static int THREADS = 1; // 索引文件的线程数，大于1时并行索引
+
+	public static int WALK_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors() / 4); // 并行索引时，遍历目录的线程数
+
+	public static int QUEUE_SIZE = 10000; // 并行索引时，等待索引的文件队列长度
+
+	public static int PROGRESS = 0; // 每索引多少个文件输出一次进度到标准输出，小于1时不输出(默认)，进度也可以通过getReport或Metrics获取
+
+	public static long MAX_FILE_SIZE = 64 * 1024 * 1024; // 每个文件最多索引的字节数
+
+	public static boolean TRUNCATE = true; // 超过MAX_FILE_SIZE的文件，true时只索引前MAX_FILE_SIZE字节，false时跳过
+
+	public static String[] TEXT_EXTENSIONS = { ".txt", ".log", ".csv" }; // 纯文本文件扩展名，这些文件流式索引，不转换HTML
+
 	/** Index all text files under a directory. */
 	public static void main(String[] args) {
 
@@ -47,8 +70,14 @@ public class IndexFiles {
 
 		System.out.println("time:\t" + (end - start));
 
+		System.out.println(indexFiles.getReport());
+
 	}
 
+	IndexReport report = null;
+
+	IndexReader existing = null; // 增量索引时，索引开始时的IndexReader
+
 	public IndexFiles() {
 
 	}
@@ -71,6 +100,26 @@ public class IndexFiles {
 	 */
 	public void index(File docsPath, File indexPath, boolean create) {
 
+		index(docsPath, indexPath, create, false);
+
+	}
+
+	/**
+	 * 增量索引文本或HTML文件，修改时间及大小与索引中相同的文件不读取，修改过的文件重新索引，已经不存在的文件从索引中删除
+	 * 
+	 * @param docsPath
+	 *            文档目录
+	 * @param indexPath
+	 *            索引目录
+	 */
+	public void update(File docsPath, File indexPath) {
+
+		index(docsPath, indexPath, false, true);
+
+	}
+
+	private void index(File docsPath, File indexPath, boolean create, boolean incremental) {
+
 		if (docsPath == null || !docsPath.exists() || !docsPath.canRead() || indexPath == null) {
 
 			return;
@@ -83,7 +132,7 @@ public class IndexFiles {
 
 		try {
 
-			dir = FSDirectory.open(indexPath);
+			dir = Directories.open(indexPath, true);
 
 		} catch (IOException ex) {
 
@@ -93,11 +142,8 @@ public class IndexFiles {
 
 		}
 
-		// Analyzer analyzer = new StandardAnalyzer(Version.LUCENE_36);
-		// Analyzer analyzer = new IKAnalyzer();
-		Analyzer analyzer = new SmartChineseAnalyzer(Version.LUCENE_36);
-
-		IndexWriterConfig iwc = new IndexWriterConfig(Version.LUCENE_36, analyzer);
+		// 索引与搜索使用同一个共享的Analyzer，通过系统属性searchengine.analyzer配置
+		IndexWriterConfig iwc = new IndexWriterConfig(Version.LUCENE_36, Analyzers.getAnalyzer());
 
 		if (create) {
 
@@ -119,20 +165,49 @@ public class IndexFiles {
 
 		iwc.setRAMBufferSizeMB(256);
 
+		IndexMerge.config(iwc);
+
 		IndexWriter writer = null;
 
 		try {
 
 			writer = new IndexWriter(dir, iwc);
 
+			if (incremental) {
+
+				// 索引开始时的快照，用于比较文件修改时间及大小
+				existing = IndexReader.open(writer, true);
+
+			}
+
 			index(writer, docsPath);
 
+			if (incremental) {
+
+				delete(writer, docsPath);
+
+			}
+
 		} catch (IOException ex) {
 
 			ex.printStackTrace();
 
 		} finally {
 
+			if (existing != null) {
+
+				try {
+
+					existing.close();
+
+				} catch (IOException ex) {
+
+				}
+
+				existing = null;
+
+			}
+
 			if (writer != null) {
 
 				// NOTE: if you want to maximize search performance,
@@ -141,11 +216,15 @@ public class IndexFiles {
 				// worth it when your index is relatively static (ie
 				// you're done adding documents to it):
 
-				try {
+				if (create && IndexMerge.FORCE_MERGE_ON_CREATE) {
 
-					writer.forceMerge(1);
+					try {
 
-				} catch (IOException ex) {
+						writer.forceMerge(1);
+
+					} catch (IOException ex) {
+
+					}
 
 				}
 
@@ -180,6 +259,8 @@ public class IndexFiles {
 	 * given, recurses over files and directories found under the given
 	 * directory.
 	 * 
+	 * THREADS大于1时并行索引目录
+	 * 
 	 * @param writer
 	 *            Writer to the index where the given file/dir info will be
 	 *            stored
@@ -197,6 +278,42 @@ public class IndexFiles {
 
 		}
 
+		if (THREADS > 1 && file.isDirectory()) {
+
+			indexParallel(writer, file, THREADS);
+
+			return;
+
+		}
+
+		report = new IndexReport();
+
+		report.start();
+
+		try {
+
+			indexTree(writer, file);
+
+		} finally {
+
+			report.end();
+
+		}
+
+	}
+
+	/**
+	 * 顺序索引文件，或递归索引目录下的所有文件
+	 */
+	void indexTree(IndexWriter writer, File file) throws IOException {
+
+		// do not try to index files that cannot be read
+		if (!file.exists() || !file.canRead()) {
+
+			return;
+
+		}
+
 		if (file.isDirectory()) {
 
 			String[] files = file.list();
@@ -210,7 +327,7 @@ public class IndexFiles {
 
 			for (int i = 0; i < files.length; i++) {
 
-				index(writer, new File(file, files[i]));
+				indexTree(writer, new File(file, files[i]));
 
 			}
 
@@ -220,48 +337,162 @@ public class IndexFiles {
 
 		}
 
-		long length = file.length();
+		indexFile(writer, file, report);
 
-		byte[] bytes = new byte[(int) length];
+	}
 
-		String value = null;
+	/**
+	 * 并行索引目录，多个线程(work-stealing)遍历目录，文件交给indexThreads个线程读取、转换HTML并写入索引，
+	 * 等待索引的文件数超过QUEUE_SIZE时，遍历目录的线程直接索引文件
+	 * 
+	 * @param writer
+	 *            IndexWriter
+	 * @param docsPath
+	 *            文档目录
+	 * @param indexThreads
+	 *            索引线程数
+	 * @throws IOException
+	 */
+	public void indexParallel(IndexWriter writer, File docsPath, int indexThreads) throws IOException {
 
-		FileInputStream fis = null;
+		if (writer == null || docsPath == null || !docsPath.exists() || !docsPath.canRead() || indexThreads < 1) {
 
-		try {
+			return;
 
-			fis = new FileInputStream(file);
+		}
 
-			fis.read(bytes);
+		IndexReport report = new IndexReport(indexThreads);
 
-			value = new String(bytes, "UTF-8");
+		this.report = report;
 
-		} catch (IOException ex) {
+		report.start();
 
-			ex.printStackTrace();
+		AtomicReference<IOException> failure = new AtomicReference<IOException>();
+
+		ThreadPoolExecutor workers = new ThreadPoolExecutor(indexThreads, indexThreads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(QUEUE_SIZE), new ThreadPoolExecutor.CallerRunsPolicy());
+
+		ForkJoinPool walkers = new ForkJoinPool(WALK_THREADS);
+
+		try {
+
+			walkers.invoke(new Walk(writer, docsPath, workers, report, failure));
 
 		} finally {
 
-			bytes = null;
+			walkers.shutdown();
+
+			workers.shutdown();
 
 			try {
 
-				fis.close();
+				workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+			} catch (InterruptedException ex) {
+
+				Thread.currentThread().interrupt();
+
+			}
+
+			report.end();
+
+		}
+
+		if (failure.get() != null) {
+
+			throw failure.get();
+
+		}
+
+	}
+
+	/**
+	 * 索引一个文件，读取文件内容，HTML内容转换为纯文本，写入索引
+	 * 
+	 * @param writer
+	 *            IndexWriter
+	 * @param file
+	 *            文件
+	 * @param report
+	 *            吞吐量统计，可以为null
+	 * @throws IOException
+	 */
+	public void indexFile(IndexWriter writer, File file, IndexReport report) throws IOException {
+
+		if (report == null) {
+
+			report = new IndexReport();
+
+		}
+
+		// 增量索引时，跳过修改时间及大小没有改变的文件，不读取文件内容
+		if (existing != null && unchanged(existing, file)) {
+
+			report.addSkip();
+
+			return;
+
+		}
+
+		long start = System.nanoTime();
+
+		long length = file.length();
+
+		// 超过最大字节数的文件截断或跳过
+		if (length > MAX_FILE_SIZE && !TRUNCATE) {
+
+			report.addSkip();
+
+			return;
+
+		}
+
+		long bytes = Math.min(length, MAX_FILE_SIZE);
+
+		boolean text = isText(file);
 
-			} catch (IOException ex) {
+		String value = null;
+
+		Reader reader = null;
+
+		try {
+
+			if (text) {
+
+				// 纯文本文件不整体读入内存，索引时由Analyzer流式读取
+				reader = FileContent.reader(file, bytes);
+
+			} else {
+
+				value = FileContent.read(file, bytes);
 
 			}
 
+		} catch (IOException ex) {
+
+			ex.printStackTrace();
+
 		}
 
-		if (value == null) {
+		if (value == null && reader == null) {
+
+			report.addFailure();
 
 			return;
 
 		}
 
-		// 如果是html内容，转换为纯文本内容
-		value = Jsoup.parse(value).text();
+		long read = System.nanoTime();
+
+		report.addRead(read - start);
+
+		report.addBytes(bytes);
+
+		if (value != null) {
+
+			// 如果是html内容，转换为纯文本内容
+			value = Extractors.extract(value);
+
+		}
 
 		// make a new, empty document
 		Document doc = new Document();
@@ -270,7 +501,7 @@ public class IndexFiles {
 		// field that is indexed (i.e. searchable), but don't tokenize
 		// the field into separate words and don't index term frequency
 		// or positional information:
-		Field pathField = new Field("key", file.getPath(), Field.Store.YES, Field.Index.ANALYZED_NO_NORMS);
+		Field pathField = new Field("key", file.getPath(), Field.Store.YES, Field.Index.NOT_ANALYZED_NO_NORMS);
 
 		pathField.setIndexOptions(IndexOptions.DOCS_ONLY);
 
@@ -291,33 +522,324 @@ public class IndexFiles {
 
 		doc.add(modifiedField);
 
+		// 文件大小，增量索引时与修改时间一起判断文件是否改变
+		NumericField sizeField = new NumericField("size");
+
+		sizeField.setLongValue(length);
+
+		doc.add(sizeField);
+
 		// Add the contents of the file to a field named "contents". Specify a
 		// Reader,
 		// so that the text of the file is tokenized and indexed, but not
 		// stored.
 		// Note that FileReader expects the file to be in UTF-8 encoding.
 		// If that's not the case searching for special characters will fail.
-		doc.add(new Field("value", value, Field.Store.NO, Field.Index.ANALYZED, Field.TermVector.NO));
+		if (reader != null) {
 
-		if (writer.getConfig().getOpenMode() == OpenMode.CREATE) {
-
-			// New index, so we just add the document (no old document can be
-			// there):
-			writer.addDocument(doc);
+			doc.add(new Field("value", reader, Field.TermVector.NO));
 
 		} else {
 
-			// Existing index (an old copy of this document may have been
-			// indexed) so
-			// we use updateDocument instead to replace the old one matching the
-			// exact
-			// path, if present:
-			writer.updateDocument(new Term("key", file.getPath()), doc);
+			doc.add(new Field("value", value, Field.Store.NO, Field.Index.ANALYZED, Field.TermVector.NO));
+
+		}
+
+		long extracted = System.nanoTime();
+
+		report.addExtract(extracted - read);
+
+		try {
+
+			if (writer.getConfig().getOpenMode() == OpenMode.CREATE) {
+
+				// New index, so we just add the document (no old document can
+				// be there):
+				writer.addDocument(doc);
+
+			} else {
+
+				// Existing index (an old copy of this document may have been
+				// indexed) so
+				// we use updateDocument instead to replace the old one matching
+				// the exact
+				// path, if present:
+				writer.updateDocument(new Term("key", file.getPath()), doc);
+
+			}
+
+		} finally {
+
+			if (reader != null) {
+
+				try {
+
+					reader.close();
+
+				} catch (IOException ex) {
+
+				}
+
+			}
 
 		}
 
 		doc = null;
 
+		// 并行索引时每个记录数只有一个线程得到，进度不会重复或遗漏
+		long rows = report.addWrite(System.nanoTime() - extracted);
+
+		if (PROGRESS > 0 && rows % PROGRESS == 0) {
+
+			System.out.println(report);
+
+		}
+
+	}
+
+	/**
+	 * 按扩展名判断是否是纯文本文件
+	 * 
+	 * @param file
+	 *            文件
+	 * @return 是否是纯文本文件
+	 */
+	public static boolean isText(File file) {
+
+		String name = file.getName().toLowerCase();
+
+		for (int i = 0; i < TEXT_EXTENSIONS.length; i++) {
+
+			if (name.endsWith(TEXT_EXTENSIONS[i])) {
+
+				return true;
+
+			}
+
+		}
+
+		return false;
+
+	}
+
+	/**
+	 * 判断文件的修改时间及大小是否与索引中相同
+	 * 
+	 * @param reader
+	 *            IndexReader
+	 * @param file
+	 *            文件
+	 * @return 是否相同，文件不在索引中时返回false
+	 * @throws IOException
+	 */
+	public boolean unchanged(IndexReader reader, File file) throws IOException {
+
+		Term term = new Term("key", file.getPath());
+
+		List<IndexReader> readers = new ArrayList<IndexReader>();
+
+		ReaderUtil.gatherSubReaders(readers, reader);
+
+		for (IndexReader segment : readers) {
+
+			TermDocs termDocs = segment.termDocs(term);
+
+			try {
+
+				if (termDocs.next()) {
+
+					int doc = termDocs.doc();
+
+					long[] times = FieldCache.DEFAULT.getLongs(segment, "time", FieldCache.NUMERIC_UTILS_LONG_PARSER);
+
+					long[] sizes = FieldCache.DEFAULT.getLongs(segment, "size", FieldCache.NUMERIC_UTILS_LONG_PARSER);
+
+					return times[doc] == file.lastModified() && sizes[doc] == file.length();
+
+				}
+
+			} finally {
+
+				termDocs.close();
+
+			}
+
+		}
+
+		return false;
+
+	}
+
+	/**
+	 * 删除文档目录下已经不存在的文件的索引
+	 * 
+	 * @param writer
+	 *            IndexWriter
+	 * @param docsPath
+	 *            文档目录
+	 * @return 删除的文件数
+	 * @throws IOException
+	 */
+	public int delete(IndexWriter writer, File docsPath) throws IOException {
+
+		if (existing == null) {
+
+			return 0;
+
+		}
+
+		String prefix = docsPath.getPath();
+
+		int count = 0;
+
+		TermEnum terms = existing.terms(new Term("key", prefix));
+
+		try {
+
+			do {
+
+				Term term = terms.term();
+
+				// 路径按字典顺序排列，超出文档目录前缀后结束
+				if (term == null || !"key".equals(term.field()) || !term.text().startsWith(prefix)) {
+
+					break;
+
+				}
+
+				if (!new File(term.text()).exists()) {
+
+					writer.deleteDocuments(term);
+
+					count++;
+
+				}
+
+			} while (terms.next());
+
+		} finally {
+
+			terms.close();
+
+		}
+
+		report.addDeletes(count);
+
+		return count;
+
+	}
+
+	/**
+	 * 获取最近一次索引的吞吐量统计
+	 * 
+	 * @return IndexReport，或null
+	 */
+	public IndexReport getReport() {
+
+		return report;
+
+	}
+
+	/**
+	 * 并行遍历目录，子目录分配给其他遍历线程，文件交给索引线程
+	 */
+	private class Walk extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final IndexWriter writer;
+
+		private final File dir;
+
+		private final ThreadPoolExecutor workers;
+
+		private final IndexReport report;
+
+		private final AtomicReference<IOException> failure;
+
+		Walk(IndexWriter writer, File dir, ThreadPoolExecutor workers, IndexReport report, AtomicReference<IOException> failure) {
+
+			this.writer = writer;
+
+			this.dir = dir;
+
+			this.workers = workers;
+
+			this.report = report;
+
+			this.failure = failure;
+
+		}
+
+		protected void compute() {
+
+			String[] files = dir.list();
+
+			// an IO error could occur
+			if (files == null || failure.get() != null) {
+
+				return;
+
+			}
+
+			List<Walk> dirs = new ArrayList<Walk>();
+
+			for (int i = 0; i < files.length; i++) {
+
+				final File file = new File(dir, files[i]);
+
+				if (!file.canRead()) {
+
+					continue;
+
+				}
+
+				if (file.isDirectory()) {
+
+					dirs.add(new Walk(writer, file, workers, report, failure));
+
+					continue;
+
+				}
+
+				workers.execute(new Runnable() {
+
+					public void run() {
+
+						if (failure.get() != null) {
+
+							return;
+
+						}
+
+						try {
+
+							indexFile(writer, file, report);
+
+						} catch (IOException ex) {
+
+							report.addFailure();
+
+							failure.compareAndSet(null, ex);
+
+						} catch (Throwable ex) { // 包括OutOfMemoryError、解析嵌套过深的HTML时的StackOverflowError等
+
+							report.addFailure();
+
+							failure.compareAndSet(null, new IOException(ex));
+
+						}
+
+					}
+
+				});
+
+			}
+
+			invokeAll(dirs);
+
+		}
+
 	}
 
 	public void index(String docsPath, String indexPath) {
@@ -344,7 +866,7 @@ public class IndexFiles {
 
 		}
 
-		index(new File(docsPath), new File(indexPath), true);
+		index(new File(docsPath), new File(indexPath), create);
 
 	}
 
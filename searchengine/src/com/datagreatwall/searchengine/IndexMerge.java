@@ -0,0 +1,279 @@
+package com.datagreatwall.searchengine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.index.MergePolicy;
+import org.apache.lucene.index.TieredMergePolicy;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Version;
+
+/**
+ * 
+ * 索引段合并设置，IndexTable和IndexFiles共用
+ * 
+ * 日常索引只按TieredMergePolicy在后台合并小段，合并代价与新增内容成正比；
+ * 合并为一个段(forceMerge)只在新建索引或定时优化任务中执行
+ * 
+ * @author 石瑜
+ * 
+ */
+public class IndexMerge {
+
+	public static double MAX_MERGED_SEGMENT_MB = 5 * 1024; // 合并后的段最大MB数
+
+	public static double SEGMENTS_PER_TIER = 10; // 每层允许的段数，越小段越少、合并越频繁
+
+	public static int MAX_MERGE_AT_ONCE = 10; // 一次合并的最多段数
+
+	public static double FLOOR_SEGMENT_MB = 2; // 小于此MB数的段按此大小计算，避免大量极小的段
+
+	public static int MERGE_THREADS = 1; // 同时执行合并的线程数
+
+	public static int MAX_MERGE_COUNT = 2; // 等待及执行中的合并数超过此值时，暂停写入索引的线程
+
+	// 合并线程优先级，降低优先级以减少合并对搜索的磁盘及CPU占用(Lucene 3.6不支持按MB/秒限速)
+	public static int MERGE_THREAD_PRIORITY = Thread.NORM_PRIORITY - 1;
+
+	public static boolean FORCE_MERGE_ON_CREATE = true; // 新建索引完成后是否合并为一个段
+
+	public static int OPTIMIZE_SEGMENTS = 1; // 定时优化时合并后的最多段数
+
+	private static ScheduledExecutorService optimizer = null;
+
+	private IndexMerge() {
+
+	}
+
+	/**
+	 * 设置IndexWriterConfig的段合并策略及合并调度
+	 * 
+	 * @param iwc
+	 *            IndexWriterConfig
+	 * @return IndexWriterConfig
+	 */
+	public static IndexWriterConfig config(IndexWriterConfig iwc) {
+
+		TieredMergePolicy policy = new TieredMergePolicy();
+
+		policy.setMaxMergedSegmentMB(MAX_MERGED_SEGMENT_MB);
+
+		policy.setSegmentsPerTier(SEGMENTS_PER_TIER);
+
+		policy.setMaxMergeAtOnce(MAX_MERGE_AT_ONCE);
+
+		policy.setFloorSegmentMB(FLOOR_SEGMENT_MB);
+
+		iwc.setMergePolicy(policy);
+
+		ConcurrentMergeScheduler scheduler = new ConcurrentMergeScheduler() {
+
+			// 记录每次合并的耗时及文档数
+			protected void doMerge(MergePolicy.OneMerge merge) throws IOException {
+
+				long start = Metrics.start();
+
+				super.doMerge(merge);
+
+				Metrics.time("index.merge", start);
+
+				Metrics.count("index.merge.docs", merge.totalDocCount);
+
+			}
+
+		};
+
+		// 先设置maxMergeCount，maxThreadCount不能大于maxMergeCount
+		scheduler.setMaxMergeCount(Math.max(MAX_MERGE_COUNT, MERGE_THREADS));
+
+		scheduler.setMaxThreadCount(MERGE_THREADS);
+
+		scheduler.setMergeThreadPriority(MERGE_THREAD_PRIORITY);
+
+		iwc.setMergeScheduler(scheduler);
+
+		return iwc;
+
+	}
+
+	/**
+	 * 优化索引，合并为最多OPTIMIZE_SEGMENTS个段，IndexTable的共享IndexWriter已经打开时使用该IndexWriter
+	 * 
+	 * @param indexPath
+	 *            索引目录
+	 */
+	public static void optimize(File indexPath) {
+
+		if (indexPath == null || !indexPath.exists()) {
+
+			return;
+
+		}
+
+		IndexWriter shared = IndexTable.getSharedWriter(indexPath);
+
+		if (shared != null) {
+
+			try {
+
+				shared.forceMerge(OPTIMIZE_SEGMENTS);
+
+				shared.commit();
+
+			} catch (IOException ex) {
+
+				ex.printStackTrace();
+
+			}
+
+			return;
+
+		}
+
+		Directory dir = null;
+
+		IndexWriter writer = null;
+
+		try {
+
+			dir = Directories.open(indexPath, true);
+
+			IndexWriterConfig iwc = new IndexWriterConfig(Version.LUCENE_36, Analyzers.getAnalyzer());
+
+			iwc.setOpenMode(OpenMode.APPEND);
+
+			writer = new IndexWriter(dir, config(iwc));
+
+			writer.forceMerge(OPTIMIZE_SEGMENTS);
+
+		} catch (IOException ex) {
+
+			ex.printStackTrace();
+
+		} finally {
+
+			if (writer != null) {
+
+				try {
+
+					writer.close();
+
+				} catch (IOException ex) {
+
+				}
+
+			}
+
+			if (dir != null) {
+
+				try {
+
+					dir.close();
+
+				} catch (IOException ex) {
+
+				}
+
+			}
+
+		}
+
+	}
+
+	/**
+	 * 每天在指定时间(如业务低峰的凌晨)优化索引
+	 * 
+	 * @param indexPaths
+	 *            索引目录数组
+	 * @param hour
+	 *            小时(0-23)
+	 * @param minute
+	 *            分钟(0-59)
+	 */
+	public static synchronized void schedule(final File[] indexPaths, int hour, int minute) {
+
+		if (indexPaths == null || indexPaths.length == 0) {
+
+			return;
+
+		}
+
+		if (optimizer == null) {
+
+			optimizer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+				public Thread newThread(Runnable r) {
+
+					Thread thread = new Thread(r, "index-optimize");
+
+					thread.setDaemon(true);
+
+					thread.setPriority(MERGE_THREAD_PRIORITY);
+
+					return thread;
+
+				}
+
+			});
+
+		}
+
+		Calendar next = Calendar.getInstance();
+
+		next.set(Calendar.HOUR_OF_DAY, hour);
+
+		next.set(Calendar.MINUTE, minute);
+
+		next.set(Calendar.SECOND, 0);
+
+		next.set(Calendar.MILLISECOND, 0);
+
+		long delay = next.getTimeInMillis() - System.currentTimeMillis();
+
+		if (delay < 0) {
+
+			delay += TimeUnit.DAYS.toMillis(1);
+
+		}
+
+		optimizer.scheduleAtFixedRate(new Runnable() {
+
+			public void run() {
+
+				for (int i = 0; i < indexPaths.length; i++) {
+
+					optimize(indexPaths[i]);
+
+				}
+
+			}
+
+		}, delay, TimeUnit.DAYS.toMillis(1), TimeUnit.MILLISECONDS);
+
+	}
+
+	/**
+	 * 取消所有定时优化任务
+	 */
+	public static synchronized void cancel() {
+
+		if (optimizer != null) {
+
+			optimizer.shutdown();
+
+			optimizer = null;
+
+		}
+
+	}
+
+}
@@ -0,0 +1,259 @@
+package com.datagreatwall.searchengine;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *
+ * 索引吞吐量统计，分为读取、文本提取、写入索引三个阶段
+ *
+ * 每个阶段记录处理的记录数及耗时(纳秒)，并行索引时阶段耗时为所有线程耗时之和，Metrics启用时同时记录到index.*统计
+ *
+ * @author 石瑜
+ *
+ */
+public class IndexReport {
+
+	private final AtomicLong rows = new AtomicLong();
+
+	private final AtomicLong readNanos = new AtomicLong();
+
+	private final AtomicLong extractNanos = new AtomicLong();
+
+	private final AtomicLong writeNanos = new AtomicLong();
+
+	private final AtomicLong failures = new AtomicLong();
+
+	private final AtomicLong bytes = new AtomicLong();
+
+	private final AtomicLong skips = new AtomicLong();
+
+	private final AtomicLong deletes = new AtomicLong();
+
+	private int threads = 1;
+
+	private long start = 0;
+
+	private long end = 0;
+
+	public IndexReport() {
+
+	}
+
+	public IndexReport(int threads) {
+
+		this.threads = threads;
+
+	}
+
+	public void start() {
+
+		start = System.nanoTime();
+
+	}
+
+	public void end() {
+
+		end = System.nanoTime();
+
+	}
+
+	public void addRead(long nanos) {
+
+		readNanos.addAndGet(nanos);
+
+		Metrics.record("index.read", nanos);
+
+	}
+
+	public void addExtract(long nanos) {
+
+		extractNanos.addAndGet(nanos);
+
+		Metrics.record("index.extract", nanos);
+
+	}
+
+	/**
+	 * 记录写入一条记录的耗时
+	 * 
+	 * @param nanos
+	 *            纳秒数
+	 * @return 已写入的记录数(包括本条)
+	 */
+	public long addWrite(long nanos) {
+
+		writeNanos.addAndGet(nanos);
+
+		long n = rows.incrementAndGet();
+
+		Metrics.record("index.write", nanos);
+
+		Metrics.count("index.rows");
+
+		return n;
+
+	}
+
+	public void addBytes(long n) {
+
+		bytes.addAndGet(n);
+
+		Metrics.count("index.bytes", n);
+
+	}
+
+	public void addSkip() {
+
+		skips.incrementAndGet();
+
+		Metrics.count("index.skips");
+
+	}
+
+	public void addDeletes(long n) {
+
+		deletes.addAndGet(n);
+
+		Metrics.count("index.deletes", n);
+
+	}
+
+	public void addFailure() {
+
+		failures.incrementAndGet();
+
+		Metrics.count("index.failures");
+
+	}
+
+	public long getRows() {
+
+		return rows.get();
+
+	}
+
+	public long getBytes() {
+
+		return bytes.get();
+
+	}
+
+	public long getSkips() {
+
+		return skips.get();
+
+	}
+
+	public long getDeletes() {
+
+		return deletes.get();
+
+	}
+
+	public long getFailures() {
+
+		return failures.get();
+
+	}
+
+	public int getThreads() {
+
+		return threads;
+
+	}
+
+	/**
+	 * 总耗时毫秒数
+	 */
+	public long getTime() {
+
+		return (end > start ? end - start : System.nanoTime() - start) / 1000000;
+
+	}
+
+	/**
+	 * 整体每秒记录数
+	 */
+	public double getRowsPerSecond() {
+
+		return perSecond(rows.get(), getTime() * 1000000);
+
+	}
+
+	/**
+	 * 整体每秒读取字节数
+	 */
+	public double getBytesPerSecond() {
+
+		return perSecond(bytes.get(), getTime() * 1000000);
+
+	}
+
+	/**
+	 * 读取阶段每秒记录数(单线程)
+	 */
+	public double getReadRowsPerSecond() {
+
+		return perSecond(rows.get(), readNanos.get());
+
+	}
+
+	/**
+	 * 文本提取阶段每秒记录数(按线程数折算)
+	 */
+	public double getExtractRowsPerSecond() {
+
+		return perSecond(rows.get(), extractNanos.get()) * threads;
+
+	}
+
+	/**
+	 * 写入索引阶段每秒记录数(按线程数折算)
+	 */
+	public double getWriteRowsPerSecond() {
+
+		return perSecond(rows.get(), writeNanos.get()) * threads;
+
+	}
+
+	private static double perSecond(long count, long nanos) {
+
+		return nanos <= 0 ? 0 : count * 1000000000.0 / nanos;
+
+	}
+
+	public String toString() {
+
+		StringBuilder sb = new StringBuilder();
+
+		sb.append("rows:\t").append(getRows());
+
+		sb.append("\tfailures:\t").append(getFailures());
+
+		sb.append("\tthreads:\t").append(threads);
+
+		sb.append("\ttime:\t").append(getTime());
+
+		if (getSkips() > 0 || getDeletes() > 0) {
+
+			sb.append("\tskips:\t").append(getSkips());
+
+			sb.append("\tdeletes:\t").append(getDeletes());
+
+		}
+
+		if (getBytes() > 0) {
+
+			sb.append("\tbytes:\t").append(getBytes());
+
+			sb.append(String.format("\tbytes/sec:\t%.1f", getBytesPerSecond()));
+
+		}
+
+		sb.append(String.format("\nrows/sec\ttotal:\t%.1f\tread:\t%.1f\textract:\t%.1f\twrite:\t%.1f", getRowsPerSecond(), getReadRowsPerSecond(), getExtractRowsPerSecond(), getWriteRowsPerSecond()));
+
+		return sb.toString();
+
+	}
+
+}
@@ -6,20 +6,29 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
-import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.cn.smart.SmartChineseAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.Fieldable;
 import org.apache.lucene.index.FieldInfo.IndexOptions;
+import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.index.IndexNotFoundException;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.IndexWriterConfig.OpenMode;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
 import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.util.Version;
-import org.jsoup.Jsoup;
 
 import com.datagreatwall.database.Database;
 
@@ -33,7 +42,28 @@ import com.datagreatwall.database.Database;
 
 public class IndexTable {
 
-	public static int MAX_ROWS = 1000; // 进行索引时，查询数据库每次最多返回记录数
+	public static int MAX_ROWS = 1000; // 进行索引时，按主键分页查询数据库每页最多返回记录数
+
+	public static boolean STREAMING = true; // 进行索引时，使用一个只进游标读取全部记录，驱动不支持时设为false按主键分页查询
+
+	public static int FETCH_SIZE = 1000; // 使用游标读取时，每次从数据库获取的记录数(MySQL需设为Integer.MIN_VALUE)
+
+	public static int THREADS = 1; // 进行索引时，转换HTML及写入索引的线程数，大于1时并行索引
+
+	public static int QUEUE_SIZE = 10000; // 并行索引时，等待索引的记录队列长度
+
+	private static final String[] END = new String[0]; // 并行索引时，队列结束标记
+
+	public static boolean APPLY_DELETES = true; // 近实时搜索重新打开时是否应用删除
+
+	// 索引目录绝对路径 -> 共享的IndexWriter，用于近实时搜索
+	private static final ConcurrentHashMap<String, IndexWriter> WRITERS = new ConcurrentHashMap<String, IndexWriter>();
+
+	public static final String KEY_MAX = "keyMax"; // 增量索引检查点，已索引的最大主键值
+
+	public static final String TIME_MAX = "timeMax"; // 增量索引检查点，已索引的最大修改时间(毫秒)
+
+	public static final String DELETE_TIME = "deleteTime"; // 增量索引检查点，已删除主键表的最大修改时间(毫秒)
 
 	public static void main(String[] args) {
 
@@ -57,10 +87,14 @@ public class IndexTable {
 
 		System.out.println("time:\t" + (end - start));
 
+		System.out.println(index.getReport());
+
 	}
 
 	Database db = null;
 
+	IndexReport report = null;
+
 	public IndexTable() {
 
 		db = new Database();
@@ -107,104 +141,116 @@ public class IndexTable {
 	 */
 	public void index(File indexBase, String table, String[] colNames, String keyName, boolean create, String keyStart, int rowCount) {
 
-		if (indexBase == null || table == null || table.length() == 0 || keyName == null || keyName.length() == 0 || colNames == null || colNames.length == 0) {
-
-			return;
+		index(indexBase, table, colNames, keyName, create, keyStart, rowCount, null);
 
-		}
+	}
 
-		File indexPath = new File(indexBase, table);
+	/**
+	 * 索引表，索引到表的最后一条记录时(rowCount小于1)，把建索引前的最大主键值及最大修改时间作为检查点提交，
+	 * 之后的update只读取检查点之后新增或修改的记录
+	 * 
+	 * @param indexBase
+	 *            上级索引目录
+	 * @param table
+	 *            表名
+	 * @param colNames
+	 *            需要索引的列名数组
+	 * @param keyName
+	 *            主键名
+	 * @param create
+	 *            新建或更新索引
+	 * @param keyStart
+	 *            主键开始值
+	 * @param rowCount
+	 *            索引记录总数
+	 * @param timeName
+	 *            修改时间列名，与update使用的相同，为null时只保存最大主键值
+	 */
+	public void index(File indexBase, String table, String[] colNames, String keyName, boolean create, String keyStart, int rowCount, String timeName) {
 
-		Directory dir = null;
+		if (indexBase == null || table == null || table.length() == 0 || keyName == null || keyName.length() == 0 || colNames == null || colNames.length == 0) {
 
-		try {
+			return;
 
-			dir = FSDirectory.open(indexPath);
+		}
 
-		} catch (IOException ex) {
+		if (Shards.isSharded(table)) {
 
-			ex.printStackTrace();
+			indexShards(indexBase, table, colNames, keyName, create, keyStart, rowCount);
 
 			return;
 
 		}
 
-		// Analyzer analyzer = new StandardAnalyzer(Version.LUCENE_36);
-		// Analyzer analyzer = new IKAnalyzer();
-		Analyzer analyzer = new SmartChineseAnalyzer(Version.LUCENE_36);
+		IndexWriter writer = null;
 
-		IndexWriterConfig iwc = new IndexWriterConfig(Version.LUCENE_36, analyzer);
+		File indexPath = new File(indexBase, table);
 
-		if (create) {
+		String path = indexPath.getAbsolutePath();
 
-			// Create a new index in the directory, removing any
-			// previously indexed documents:
-			iwc.setOpenMode(OpenMode.CREATE);
+		// 已经打开共享IndexWriter(getWriter、poll)时使用共享的，不能再打开另一个IndexWriter
+		IndexWriter shared = WRITERS.get(path);
 
-		} else {
+		try {
 
-			// Add new documents to an existing index:
-			iwc.setOpenMode(OpenMode.CREATE_OR_APPEND);
+			// 建索引期间新增或修改的记录大于等于建索引前的最大值，之后的update会重新索引，不会遗漏
+			Map<String, String> checkpoint = rowCount > 0 ? null : maxCheckpoint(table, keyName, timeName);
 
-		}
+			writer = shared != null ? shared : openWriter(indexPath, create);
 
-		// Optional: for better indexing performance, if you
-		// are indexing many documents, increase the RAM
-		// buffer. But if you do this, increase the max heap
-		// size to the JVM (eg add -Xmx512m or -Xmx1g):
-		//
+			if (shared == null) {
 
-		iwc.setRAMBufferSizeMB(256);
+				Metrics.writer(path, writer);
 
-		IndexWriter writer = null;
+			} else if (create) {
 
-		try {
+				// 近实时搜索在重新建索引完成前只能搜索到已经重新索引的记录
+				writer.deleteAll();
 
-			writer = new IndexWriter(dir, iwc);
+			}
 
 			index(writer, table, colNames, keyName, keyStart, rowCount);
 
-		} catch (Exception ex) {
-
-			ex.printStackTrace();
+			if (checkpoint != null) {
 
-		} finally {
+				if (!create) {
 
-			if (writer != null) {
+					Map<String, String> last = new HashMap<String, String>(getCheckpoint(writer.getDirectory()));
 
-				// NOTE: if you want to maximize search performance,
-				// you can optionally call forceMerge here. This can be
-				// a terribly costly operation, so generally it's only
-				// worth it when your index is relatively static (ie
-				// you're done adding documents to it):
+					last.putAll(checkpoint);
 
-				try {
+					checkpoint = last;
 
-					writer.forceMerge(1);
+				}
 
-				} catch (IOException ex) {
+				writer.commit(checkpoint);
 
-				}
+			} else if (shared != null) {
 
-				try {
+				writer.commit();
 
-					writer.close();
+			}
 
-				} catch (IOException ex) {
+		} catch (Exception ex) {
 
-				}
+			ex.printStackTrace();
 
-			}
+		} finally {
 
-			if (dir != null) {
+			if (shared != null) {
 
-				try {
+				SearcherPool.refresh(indexPath);
 
-					dir.close();
+			} else {
 
-				} catch (IOException ex) {
+				Metrics.removeWriter(path);
 
-				}
+				// NOTE: if you want to maximize search performance,
+				// you can optionally call forceMerge here. This can be
+				// a terribly costly operation, so generally it's only
+				// worth it when your index is relatively static (ie
+				// you're done adding documents to it):
+				closeWriter(writer, create && IndexMerge.FORCE_MERGE_ON_CREATE);
 
 			}
 
@@ -213,232 +259,1906 @@ public class IndexTable {
 	}
 
 	/**
-	 * 索引记录，根据IndexWriter，键名，键值，列名数组，列值数组
+	 * 分片索引表，每个分片一个IndexWriter，一个线程读取数据库记录，按主键分到各个分片并行写入，
+	 * 索引线程数为THREADS与分片数中较大的一个
 	 * 
-	 * @param writer
-	 *            IndexWriter
-	 * @param keyName
-	 *            键名
-	 * @param keyValue
-	 *            键值
+	 * @param indexBase
+	 *            上级索引目录
+	 * @param table
+	 *            表名
 	 * @param colNames
-	 *            列名数组
-	 * @param colValues
-	 *            列值数组
-	 * @throws IOException
+	 *            需要索引的列名数组
+	 * @param keyName
+	 *            主键名
+	 * @param create
+	 *            新建或更新索引
+	 * @param keyStart
+	 *            主键开始值
+	 * @param rowCount
+	 *            索引记录总数
 	 */
-	public void index(IndexWriter writer, String keyName, String keyValue, String[] colNames, String[] colValues) throws IOException {
+	private void indexShards(File indexBase, String table, String[] colNames, String keyName, boolean create, String keyStart, int rowCount) {
 
-		if (writer == null || keyName == null || keyName.length() == 0 || keyValue == null || keyValue.length() == 0 || colNames == null || colNames.length == 0 || colValues == null || colValues.length == 0) {
+		File[] paths = Shards.paths(indexBase, table);
 
-			return;
+		IndexWriter[] writers = new IndexWriter[paths.length];
 
-		}
+		// 已经打开的共享IndexWriter继续使用，完成后提交，不关闭
+		IndexWriter[] opened = new IndexWriter[paths.length];
 
-		Document doc = new Document();
+		try {
 
-		// KEY
-		Field keyField = new Field(keyName.toLowerCase(), keyValue, Field.Store.YES, Field.Index.NOT_ANALYZED_NO_NORMS);
+			for (int i = 0; i < paths.length; i++) {
 
-		keyField.setIndexOptions(IndexOptions.DOCS_ONLY);
+				writers[i] = WRITERS.get(paths[i].getAbsolutePath());
 
-		doc.add(keyField);
+				if (writers[i] == null) {
 
-		for (int i = 0; i < colNames.length; i++) {
+					writers[i] = openWriter(paths[i], create);
 
-			if (colNames[i] != null && colValues[i] != null) {
+					opened[i] = writers[i];
 
-				// 如果是html内容，转换为纯文本内容
-				colValues[i] = Jsoup.parse(colValues[i]).text();
+					Metrics.writer(paths[i].getAbsolutePath(), writers[i]);
 
-				// System.out.println(colValues[i]);
+				} else if (create) {
 
-				// 字段内容
-				Field colField = new Field(colNames[i].toLowerCase(), colValues[i], Field.Store.NO, Field.Index.ANALYZED, Field.TermVector.NO);
+					writers[i].deleteAll();
 
-				doc.add(colField);
+				}
 
 			}
 
-		}
+			indexParallel(writers, table, colNames, keyName, keyStart, rowCount, Math.max(THREADS, writers.length));
 
-		// 更新索引
-		if (writer.getConfig().getOpenMode() == OpenMode.CREATE) { // 添加
+			for (int i = 0; i < paths.length; i++) {
 
-			writer.addDocument(doc);
+				if (opened[i] == null) {
 
-		} else { // 更新
+					writers[i].commit();
 
-			writer.updateDocument(new Term(keyName, keyValue), doc);
+				}
 
-		}
+			}
 
-		doc = null;
+		} catch (Exception ex) {
 
-	}
+			ex.printStackTrace();
 
-	public void index(IndexWriter writer, String table, String[] colNames, String keyName) throws IOException, SQLException {
+		} finally {
 
-		index(writer, table, colNames, keyName, null, 0);
+			for (int i = 0; i < paths.length; i++) {
 
-	}
+				if (opened[i] != null) {
 
-	public void index(IndexWriter writer, String table, String[] colNames, String keyName, String keyStart) throws IOException, SQLException {
+					Metrics.removeWriter(paths[i].getAbsolutePath());
 
-		index(writer, table, colNames, keyName, keyStart, 0);
+				} else if (writers[i] != null) {
 
-	}
+					SearcherPool.refresh(paths[i]);
 
-	/**
-	 * 索引表，根据指定的IndexWriter，表名，主键名，列名数组， 主键开始值，索引记录总数
-	 * 
-	 * @param writer
-	 *            IndexWriter
-	 * @param table
-	 *            表名
-	 * @param keyName
-	 *            主键名
-	 * @param colNames
-	 *            需要索引的列名数组
-	 * @param keyStart
-	 *            主键开始值
-	 * @param maxRows
-	 *            索引记录总数
-	 * @throws IOException
-	 * @throws SQLException
-	 */
-	public void index(IndexWriter writer, String table, String[] colNames, String keyName, String keyStart, int maxRows) throws IOException, SQLException {
+				}
 
-		if (writer == null || table == null || table.length() == 0 || keyName == null || keyName.length() == 0 || colNames == null || colNames.length == 0) {
+			}
 
-			return;
+			closeWriters(opened, create && IndexMerge.FORCE_MERGE_ON_CREATE);
 
 		}
 
-		StringBuilder sql = new StringBuilder("SELECT ");
-
-		sql.append(keyName);
-
-		for (int i = 0; i < colNames.length; i++) {
+	}
 
-			sql.append(",");
+	/**
+	 * 并行关闭多个IndexWriter，每个IndexWriter一个线程，全部关闭后返回
+	 * 
+	 * @param writers
+	 *            IndexWriter数组，可以包含null
+	 * @param forceMerge
+	 *            关闭前是否合并为一个段
+	 */
+	public void closeWriters(IndexWriter[] writers, final boolean forceMerge) {
 
-			sql.append(colNames[i]);
+		Thread[] closers = new Thread[writers.length];
 
-		}
+		for (int i = 0; i < writers.length; i++) {
 
-		sql.append(" FROM ");
+			final IndexWriter writer = writers[i];
 
-		sql.append(table);
+			closers[i] = new Thread(new Runnable() {
 
-		if (keyStart != null && keyStart.length() > 0) {
+				public void run() {
 
-			sql.append(" WHERE ");
+					closeWriter(writer, forceMerge);
 
-			sql.append(keyName);
+				}
 
-			sql.append(" >= ");
+			}, "close-writer-" + i);
 
-			sql.append(keyStart);
+			closers[i].start();
 
 		}
 
-		sql.append(" ORDER BY ");
-
-		sql.append(keyName);
-
-		Connection conn = null;
+		for (int i = 0; i < closers.length; i++) {
 
-		PreparedStatement ps = null;
+			try {
 
-		ResultSet rs = null;
+				closers[i].join();
 
-		boolean next = false;
+			} catch (InterruptedException ex) {
 
-		String keyValue = null;
+				Thread.currentThread().interrupt();
 
-		int remain = 0;
+			}
 
-		try {
+		}
 
-			conn = db.getConnection();
+	}
 
-			ps = conn.prepareStatement(sql.toString());
+	/**
+	 * 打开索引目录的IndexWriter
+	 * 
+	 * @param indexPath
+	 *            索引目录
+	 * @param create
+	 *            新建或更新索引
+	 * @return IndexWriter
+	 * @throws IOException
+	 */
+	public IndexWriter openWriter(File indexPath, boolean create) throws IOException {
 
-			ps.setMaxRows(MAX_ROWS + 1);
+		Directory dir = Directories.open(indexPath, true);
 
-			rs = ps.executeQuery();
+		// 索引与搜索使用同一个共享的Analyzer，通过系统属性searchengine.analyzer配置
+		IndexWriterConfig iwc = new IndexWriterConfig(Version.LUCENE_36, Analyzers.getAnalyzer());
 
-			String[] colValues = new String[colNames.length];
+		if (create) {
 
-			int count = 0;
+			// Create a new index in the directory, removing any
+			// previously indexed documents:
+			iwc.setOpenMode(OpenMode.CREATE);
 
-			while (rs.next()) {
+		} else {
 
-				keyValue = String.valueOf(rs.getObject(keyName));
+			// Add new documents to an existing index:
+			iwc.setOpenMode(OpenMode.CREATE_OR_APPEND);
 
-				for (int i = 0; i < colNames.length; i++) {
+		}
 
-					colValues[i] = String.valueOf(rs.getObject(colNames[i]));
+		// Optional: for better indexing performance, if you
+		// are indexing many documents, increase the RAM
+		// buffer. But if you do this, increase the max heap
+		// size to the JVM (eg add -Xmx512m or -Xmx1g):
+		//
 
-				}
+		iwc.setRAMBufferSizeMB(256);
 
-				index(writer, keyName, keyValue, colNames, colValues);
+		IndexMerge.config(iwc);
 
-				count++;
+		try {
 
-				if (count == MAX_ROWS || count == maxRows) {
+			return new IndexWriter(dir, iwc);
 
-					break;
+		} catch (IOException ex) {
 
-				}
+			dir.close();
 
-			}
+			throw ex;
 
-			if (count == MAX_ROWS && rs.next()) {
+		}
 
-				keyValue = String.valueOf(rs.getObject(keyName));
+	}
 
-				if (maxRows < 1) {
+	/**
+	 * 关闭IndexWriter及其索引目录
+	 * 
+	 * @param writer
+	 *            IndexWriter
+	 * @param forceMerge
+	 *            关闭前是否合并为一个段
+	 */
+	public void closeWriter(IndexWriter writer, boolean forceMerge) {
 
-					next = true;
+		if (writer == null) {
 
-					remain = maxRows;
+			return;
 
-				} else {
+		}
 
-					remain = maxRows - count;
+		Directory dir = writer.getDirectory();
 
-					if (remain > 0) {
+		if (forceMerge) {
 
-						next = true;
+			try {
 
-					}
+				writer.forceMerge(1);
 
-				}
+			} catch (IOException ex) {
 
 			}
 
-		} catch (SQLException ex) {
-
-			throw ex;
+		}
 
-		} finally {
+		try {
 
-			sql = null;
+			writer.close();
 
-			db.close(rs, ps, conn);
+		} catch (IOException ex) {
 
 		}
 
-		if (next) {
+		try {
+
+			dir.close();
 
-			index(writer, table, colNames, keyName, keyValue, remain);
+		} catch (IOException ex) {
 
 		}
 
 	}
 
+	/**
+	 * 索引记录，根据IndexWriter，键名，键值，列名数组，列值数组
+	 * 
+	 * @param writer
+	 *            IndexWriter
+	 * @param keyName
+	 *            键名
+	 * @param keyValue
+	 *            键值
+	 * @param colNames
+	 *            列名数组
+	 * @param colValues
+	 *            列值数组
+	 * @throws IOException
+	 */
+	public void index(IndexWriter writer, String keyName, String keyValue, String[] colNames, String[] colValues) throws IOException {
+
+		index(writer, null, keyName, keyValue, colNames, colValues);
+
+	}
+
+	/**
+	 * 索引记录，根据IndexWriter，表名，键名，键值，列名数组，列值数组，过滤列按该表在FieldTypes设置的方式索引
+	 * 
+	 * @param writer
+	 *            IndexWriter
+	 * @param table
+	 *            表名，为null时全部列按text索引
+	 * @param keyName
+	 *            键名
+	 * @param keyValue
+	 *            键值
+	 * @param colNames
+	 *            列名数组
+	 * @param colValues
+	 *            列值数组
+	 * @throws IOException
+	 */
+	public void index(IndexWriter writer, String table, String keyName, String keyValue, String[] colNames, String[] colValues) throws IOException {
+
+		if (writer == null) {
+
+			return;
+
+		}
+
+		Document doc = document(table, keyName, keyValue, colNames, colValues);
+
+		if (doc == null) {
+
+			return;
+
+		}
+
+		write(writer, keyName, keyValue, doc);
+
+		doc = null;
+
+	}
+
+	/**
+	 * 生成索引文档，根据表名，键名，键值，列名数组，列值数组，HTML内容转换为纯文本，过滤列按该表在FieldTypes设置的方式索引
+	 * 
+	 * @param table
+	 *            表名，为null时全部列按text索引
+	 * @param keyName
+	 *            键名
+	 * @param keyValue
+	 *            键值
+	 * @param colNames
+	 *            列名数组
+	 * @param colValues
+	 *            列值数组
+	 * @return Document，或null
+	 */
+	public Document document(String table, String keyName, String keyValue, String[] colNames, String[] colValues) {
+
+		if (keyName == null || keyName.length() == 0 || keyValue == null || keyValue.length() == 0 || colNames == null || colNames.length == 0 || colValues == null || colValues.length == 0) {
+
+			return null;
+
+		}
+
+		Document doc = new Document();
+
+		// KEY
+		Field keyField = new Field(keyName.toLowerCase(), keyValue, Field.Store.YES, Field.Index.NOT_ANALYZED_NO_NORMS);
+
+		keyField.setIndexOptions(IndexOptions.DOCS_ONLY);
+
+		doc.add(keyField);
+
+		for (int i = 0; i < colNames.length; i++) {
+
+			if (colNames[i] != null && colValues[i] != null) {
+
+				String type = FieldTypes.getType(table, colNames[i]);
+
+				// 过滤列不分词或按数字索引
+				if (!FieldTypes.TEXT.equals(type)) {
+
+					Fieldable field = FieldTypes.field(colNames[i].toLowerCase(), type, colValues[i]);
+
+					if (field != null) {
+
+						doc.add(field);
+
+					}
+
+					continue;
+
+				}
+
+				// 如果是html内容，转换为纯文本内容
+				colValues[i] = Extractors.extract(colValues[i]);
+
+				// System.out.println(colValues[i]);
+
+				// 字段内容
+				Field colField = new Field(colNames[i].toLowerCase(), colValues[i], Field.Store.NO, Field.Index.ANALYZED, Field.TermVector.NO);
+
+				doc.add(colField);
+
+			}
+
+		}
+
+		return doc;
+
+	}
+
+	/**
+	 * 写入索引文档，新建索引时添加，否则按键值更新
+	 * 
+	 * @param writer
+	 *            IndexWriter
+	 * @param keyName
+	 *            键名
+	 * @param keyValue
+	 *            键值
+	 * @param doc
+	 *            索引文档
+	 * @throws IOException
+	 */
+	public void write(IndexWriter writer, String keyName, String keyValue, Document doc) throws IOException {
+
+		// 更新索引
+		if (writer.getConfig().getOpenMode() == OpenMode.CREATE) { // 添加
+
+			writer.addDocument(doc);
+
+		} else { // 更新
+
+			writer.updateDocument(new Term(keyName.toLowerCase(), keyValue), doc);
+
+		}
+
+	}
+
+	public void index(IndexWriter writer, String table, String[] colNames, String keyName) throws IOException, SQLException {
+
+		index(writer, table, colNames, keyName, null, 0);
+
+	}
+
+	public void index(IndexWriter writer, String table, String[] colNames, String keyName, String keyStart) throws IOException, SQLException {
+
+		index(writer, table, colNames, keyName, keyStart, 0);
+
+	}
+
+	/**
+	 * 索引表，根据指定的IndexWriter，表名，主键名，列名数组， 主键开始值，索引记录总数
+	 * 
+	 * @param writer
+	 *            IndexWriter
+	 * @param table
+	 *            表名
+	 * @param keyName
+	 *            主键名
+	 * @param colNames
+	 *            需要索引的列名数组
+	 * @param keyStart
+	 *            主键开始值
+	 * @param maxRows
+	 *            索引记录总数
+	 * @throws IOException
+	 * @throws SQLException
+	 */
+	public void index(final IndexWriter writer, final String table, final String[] colNames, final String keyName, String keyStart, int maxRows) throws IOException, SQLException {
+
+		if (writer == null) {
+
+			return;
+
+		}
+
+		if (THREADS > 1) {
+
+			indexParallel(writer, table, colNames, keyName, keyStart, maxRows, THREADS);
+
+			return;
+
+		}
+
+		report = new IndexReport();
+
+		report.start();
+
+		read(table, colNames, keyName, keyStart, maxRows, new RowHandler() {
+
+			public void row(String keyValue, String[] colValues) throws IOException {
+
+				long start = System.nanoTime();
+
+				Document doc = document(table, keyName, keyValue, colNames, colValues);
+
+				long extracted = System.nanoTime();
+
+				report.addExtract(extracted - start);
+
+				if (doc != null) {
+
+					write(writer, keyName, keyValue, doc);
+
+				}
+
+				report.addWrite(System.nanoTime() - extracted);
+
+			}
+
+		});
+
+		report.end();
+
+	}
+
+	/**
+	 * 读取表记录，根据表名，主键名，列名数组，主键开始值，读取记录总数，每条记录交给RowHandler处理
+	 * 
+	 * STREAMING为true时使用一个只进游标顺序读取全部记录，否则按主键分页查询，每页MAX_ROWS条记录
+	 * 
+	 * @param table
+	 *            表名
+	 * @param colNames
+	 *            列名数组
+	 * @param keyName
+	 *            主键名
+	 * @param keyStart
+	 *            主键开始值
+	 * @param maxRows
+	 *            读取记录总数
+	 * @param handler
+	 *            记录处理
+	 * @throws IOException
+	 * @throws SQLException
+	 */
+	public void read(String table, String[] colNames, String keyName, String keyStart, int maxRows, RowHandler handler) throws IOException, SQLException {
+
+		if (table == null || table.length() == 0 || keyName == null || keyName.length() == 0 || colNames == null || colNames.length == 0 || handler == null) {
+
+			return;
+
+		}
+
+		if (STREAMING) {
+
+			readStreaming(table, colNames, keyName, keyStart, maxRows, handler);
+
+		} else {
+
+			readPaged(table, colNames, keyName, keyStart, maxRows, handler);
+
+		}
+
+	}
+
+	/**
+	 * 使用一个只进游标顺序读取表记录，每次从数据库获取FETCH_SIZE条记录
+	 */
+	void readStreaming(String table, String[] colNames, String keyName, String keyStart, int maxRows, RowHandler handler) throws IOException, SQLException {
+
+		boolean hasStart = keyStart != null && keyStart.length() > 0;
+
+		String sql = select(table, colNames, keyName, hasStart ? ">=" : null);
+
+		Connection conn = null;
+
+		PreparedStatement ps = null;
+
+		ResultSet rs = null;
+
+		boolean autoCommit = true;
+
+		try {
+
+			conn = db.getConnection();
+
+			// 部分驱动(如PostgreSQL)只有在事务中才使用游标分批获取记录
+			autoCommit = conn.getAutoCommit();
+
+			if (autoCommit) {
+
+				conn.setAutoCommit(false);
+
+			}
+
+			ps = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+
+			ps.setFetchSize(FETCH_SIZE);
+
+			if (maxRows > 0) {
+
+				ps.setMaxRows(maxRows);
+
+			}
+
+			if (hasStart) {
+
+				setKey(ps, 1, keyStart);
+
+			}
+
+			long fetch = Metrics.start();
+
+			rs = ps.executeQuery();
+
+			fetch = Metrics.time("jdbc.query", fetch);
+
+			String[] colValues = new String[colNames.length];
+
+			int count = 0;
+
+			while (rs.next()) {
+
+				String keyValue = String.valueOf(rs.getObject(keyName));
+
+				for (int i = 0; i < colNames.length; i++) {
+
+					colValues[i] = String.valueOf(rs.getObject(colNames[i]));
+
+				}
+
+				Metrics.time("jdbc.fetch", fetch);
+
+				handler.row(keyValue, colValues);
+
+				fetch = Metrics.start();
+
+				count++;
+
+				if (count == maxRows) {
+
+					break;
+
+				}
+
+			}
+
+		} finally {
+
+			if (conn != null && autoCommit) {
+
+				try {
+
+					conn.commit();
+
+					conn.setAutoCommit(true);
+
+				} catch (SQLException ex) {
+
+				}
+
+			}
+
+			db.close(rs, ps, conn);
+
+		}
+
+	}
+
+	/**
+	 * 按主键分页读取表记录，每页MAX_ROWS条记录，下一页从上一页最后一个主键值之后(>)开始，用于不支持游标分批获取的驱动
+	 */
+	void readPaged(String table, String[] colNames, String keyName, String keyStart, int maxRows, RowHandler handler) throws IOException, SQLException {
+
+		boolean hasStart = keyStart != null && keyStart.length() > 0;
+
+		String firstSql = select(table, colNames, keyName, hasStart ? ">=" : null);
+
+		String nextSql = select(table, colNames, keyName, ">");
+
+		String[] colValues = new String[colNames.length];
+
+		Object lastKey = null;
+
+		int count = 0;
+
+		while (true) {
+
+			Connection conn = null;
+
+			PreparedStatement ps = null;
+
+			ResultSet rs = null;
+
+			int pageCount = 0;
+
+			try {
+
+				conn = db.getConnection();
+
+				ps = conn.prepareStatement(lastKey == null ? firstSql : nextSql);
+
+				int pageRows = maxRows > 0 ? Math.min(MAX_ROWS, maxRows - count) : MAX_ROWS;
+
+				ps.setMaxRows(pageRows);
+
+				if (lastKey != null) {
+
+					ps.setObject(1, lastKey);
+
+				} else if (hasStart) {
+
+					setKey(ps, 1, keyStart);
+
+				}
+
+				long fetch = Metrics.start();
+
+				rs = ps.executeQuery();
+
+				fetch = Metrics.time("jdbc.query", fetch);
+
+				while (rs.next()) {
+
+					lastKey = rs.getObject(keyName);
+
+					for (int i = 0; i < colNames.length; i++) {
+
+						colValues[i] = String.valueOf(rs.getObject(colNames[i]));
+
+					}
+
+					Metrics.time("jdbc.fetch", fetch);
+
+					handler.row(String.valueOf(lastKey), colValues);
+
+					fetch = Metrics.start();
+
+					count++;
+
+					pageCount++;
+
+				}
+
+				if (pageCount < pageRows || lastKey == null || count == maxRows) {
+
+					return;
+
+				}
+
+			} finally {
+
+				db.close(rs, ps, conn);
+
+			}
+
+		}
+
+	}
+
+	/**
+	 * 生成查询语句，op不为null时增加主键条件(参数)
+	 */
+	private static String select(String table, String[] colNames, String keyName, String op) {
+
+		StringBuilder sql = new StringBuilder("SELECT ");
+
+		sql.append(keyName);
+
+		for (int i = 0; i < colNames.length; i++) {
+
+			sql.append(",");
+
+			sql.append(colNames[i]);
+
+		}
+
+		sql.append(" FROM ");
+
+		sql.append(table);
+
+		if (op != null) {
+
+			sql.append(" WHERE ");
+
+			sql.append(keyName);
+
+			sql.append(" ");
+
+			sql.append(op);
+
+			sql.append(" ?");
+
+		}
+
+		sql.append(" ORDER BY ");
+
+		sql.append(keyName);
+
+		return sql.toString();
+
+	}
+
+	/**
+	 * 设置主键参数，数字主键按long绑定，否则按字符串绑定
+	 */
+	private static void setKey(PreparedStatement ps, int index, String keyValue) throws SQLException {
+
+		try {
+
+			ps.setLong(index, Long.parseLong(keyValue.trim()));
+
+		} catch (NumberFormatException ex) {
+
+			ps.setString(index, keyValue);
+
+		}
+
+	}
+
+	/**
+	 * 并行索引表，一个线程读取数据库记录，多个线程转换HTML内容、生成文档并写入索引，
+	 * 读取线程与索引线程之间使用有界队列，队列满时读取线程等待
+	 * 
+	 * @param writer
+	 *            IndexWriter
+	 * @param table
+	 *            表名
+	 * @param colNames
+	 *            需要索引的列名数组
+	 * @param keyName
+	 *            主键名
+	 * @param keyStart
+	 *            主键开始值
+	 * @param maxRows
+	 *            索引记录总数
+	 * @param threads
+	 *            索引线程数
+	 * @throws IOException
+	 * @throws SQLException
+	 */
+	public void indexParallel(IndexWriter writer, String table, String[] colNames, String keyName, String keyStart, int maxRows, int threads) throws IOException, SQLException {
+
+		if (writer == null) {
+
+			return;
+
+		}
+
+		indexParallel(new IndexWriter[] { writer }, table, colNames, keyName, keyStart, maxRows, threads);
+
+	}
+
+	/**
+	 * 并行索引表到多个分片，每条记录按主键写入Shards.shard对应的IndexWriter
+	 * 
+	 * @param writers
+	 *            每个分片的IndexWriter，只有一个时不分片
+	 * @param table
+	 *            表名
+	 * @param colNames
+	 *            需要索引的列名数组
+	 * @param keyName
+	 *            主键名
+	 * @param keyStart
+	 *            主键开始值
+	 * @param maxRows
+	 *            索引记录总数
+	 * @param threads
+	 *            索引线程数
+	 * @throws IOException
+	 * @throws SQLException
+	 */
+	public void indexParallel(final IndexWriter[] writers, final String table, final String[] colNames, final String keyName, String keyStart, int maxRows, int threads) throws IOException, SQLException {
+
+		if (writers == null || writers.length == 0 || threads < 1) {
+
+			return;
+
+		}
+
+		final BlockingQueue<String[]> queue = new ArrayBlockingQueue<String[]>(QUEUE_SIZE);
+
+		final AtomicReference<IOException> failure = new AtomicReference<IOException>();
+
+		final IndexReport report = new IndexReport(threads);
+
+		this.report = report;
+
+		report.start();
+
+		final Thread[] workers = new Thread[threads];
+
+		for (int i = 0; i < workers.length; i++) {
+
+			workers[i] = new Thread(new Runnable() {
+
+				public void run() {
+
+					while (true) {
+
+						String[] row = null;
+
+						try {
+
+							row = queue.take();
+
+						} catch (InterruptedException ex) {
+
+							Thread.currentThread().interrupt();
+
+							return;
+
+						}
+
+						if (row == END) {
+
+							return;
+
+						}
+
+						// 已经失败时继续取出队列中的记录，避免读取线程等待
+						if (failure.get() != null) {
+
+							continue;
+
+						}
+
+						String[] colValues = new String[row.length - 1];
+
+						System.arraycopy(row, 1, colValues, 0, colValues.length);
+
+						try {
+
+							long start = System.nanoTime();
+
+							Document doc = document(table, keyName, row[0], colNames, colValues);
+
+							long extracted = System.nanoTime();
+
+							report.addExtract(extracted - start);
+
+							if (doc != null) {
+
+								IndexWriter writer = writers.length == 1 ? writers[0] : writers[Shards.shard(table, row[0]) % writers.length];
+
+								write(writer, keyName, row[0], doc);
+
+							}
+
+							report.addWrite(System.nanoTime() - extracted);
+
+						} catch (IOException ex) {
+
+							report.addFailure();
+
+							failure.compareAndSet(null, ex);
+
+						} catch (Throwable ex) { // 包括OutOfMemoryError等，记录后继续取出队列中的记录
+
+							report.addFailure();
+
+							failure.compareAndSet(null, new IOException(ex));
+
+						}
+
+					}
+
+				}
+
+			}, "index-" + table + "-" + i);
+
+			workers[i].start();
+
+		}
+
+		try {
+
+			read(table, colNames, keyName, keyStart, maxRows, new RowHandler() {
+
+				long last = System.nanoTime();
+
+				public void row(String keyValue, String[] colValues) throws IOException {
+
+					report.addRead(System.nanoTime() - last);
+
+					if (failure.get() != null) {
+
+						throw failure.get();
+
+					}
+
+					String[] row = new String[colValues.length + 1];
+
+					row[0] = keyValue;
+
+					System.arraycopy(colValues, 0, row, 1, colValues.length);
+
+					try {
+
+						if (!offer(queue, row, workers)) {
+
+							throw failure.get() != null ? failure.get() : new IOException("index threads stopped: " + table);
+
+						}
+
+					} catch (InterruptedException ex) {
+
+						Thread.currentThread().interrupt();
+
+						throw new IOException(ex);
+
+					}
+
+					last = System.nanoTime();
+
+				}
+
+			});
+
+		} finally {
+
+			for (int i = 0; i < workers.length; i++) {
+
+				try {
+
+					if (!offer(queue, END, workers)) {
+
+						break;
+
+					}
+
+				} catch (InterruptedException ex) {
+
+					Thread.currentThread().interrupt();
+
+					break;
+
+				}
+
+			}
+
+			for (int i = 0; i < workers.length; i++) {
+
+				try {
+
+					workers[i].join();
+
+				} catch (InterruptedException ex) {
+
+					Thread.currentThread().interrupt();
+
+				}
+
+			}
+
+			report.end();
+
+		}
+
+		if (failure.get() != null) {
+
+			throw failure.get();
+
+		}
+
+	}
+
+	/**
+	 * 放入并行索引的队列，队列已满时等待，索引线程全部结束时不再等待
+	 * 
+	 * @return 是否已放入，索引线程全部结束时返回false
+	 */
+	private static boolean offer(BlockingQueue<String[]> queue, String[] row, Thread[] workers) throws InterruptedException {
+
+		while (!queue.offer(row, 1, TimeUnit.SECONDS)) {
+
+			boolean alive = false;
+
+			for (int i = 0; i < workers.length && !alive; i++) {
+
+				alive = workers[i].isAlive();
+
+			}
+
+			if (!alive) {
+
+				return false;
+
+			}
+
+		}
+
+		return true;
+
+	}
+
+	public int update(File indexBase, String table, String[] colNames, String keyName) {
+
+		return update(indexBase, table, colNames, keyName, null, null, null);
+
+	}
+
+	public int update(File indexBase, String table, String[] colNames, String keyName, String timeName) {
+
+		return update(indexBase, table, colNames, keyName, timeName, null, null);
+
+	}
+
+	/**
+	 * 增量索引表，只索引上次检查点之后新增或修改的记录，并删除已删除记录的索引，检查点保存在索引提交的用户数据中
+	 * 
+	 * @param indexBase
+	 *            上级索引目录
+	 * @param table
+	 *            表名
+	 * @param colNames
+	 *            需要索引的列名数组
+	 * @param keyName
+	 *            主键名
+	 * @param timeName
+	 *            修改时间列名，为null时只索引主键大于检查点的新增记录
+	 * @param deleteName
+	 *            删除标记列名，值为1、true或Y的记录从索引中删除，可以为null
+	 * @param deleteTable
+	 *            已删除主键表名，包含主键列(有修改时间列名时还包含修改时间列)，可以为null
+	 * @return 索引或删除的记录数，失败时返回-1
+	 */
+	public int update(File indexBase, String table, String[] colNames, String keyName, String timeName, String deleteName, String deleteTable) {
+
+		if (indexBase == null || table == null || table.length() == 0 || keyName == null || keyName.length() == 0 || colNames == null || colNames.length == 0) {
+
+			return -1;
+
+		}
+
+		File indexPath = new File(indexBase, table);
+
+		// 已经打开共享IndexWriter时直接使用，不能再打开另一个IndexWriter
+		IndexWriter shared = WRITERS.get(indexPath.getAbsolutePath());
+
+		IndexWriter writer = null;
+
+		try {
+
+			// 增量索引的检查点保存在一个索引中，分片的表需要重新建索引
+			if (Shards.isSharded(table)) {
+
+				throw new IOException("sharded table does not support update: " + table);
+
+			}
+
+			writer = shared != null ? shared : openWriter(indexPath, false);
+
+			return update(writer, table, colNames, keyName, timeName, deleteName, deleteTable);
+
+		} catch (Exception ex) {
+
+			ex.printStackTrace();
+
+			return -1;
+
+		} finally {
+
+			if (shared == null) {
+
+				closeWriter(writer, false);
+
+			}
+
+		}
+
+	}
+
+	/**
+	 * 持续增量索引表，使用共享IndexWriter每隔interval毫秒执行一次update，直到线程被中断，修改通过近实时搜索立即可见
+	 * 
+	 * @param indexBase
+	 *            上级索引目录
+	 * @param table
+	 *            表名
+	 * @param colNames
+	 *            需要索引的列名数组
+	 * @param keyName
+	 *            主键名
+	 * @param timeName
+	 *            修改时间列名
+	 * @param deleteName
+	 *            删除标记列名
+	 * @param deleteTable
+	 *            已删除主键表名
+	 * @param interval
+	 *            间隔毫秒数
+	 */
+	public void poll(File indexBase, String table, String[] colNames, String keyName, String timeName, String deleteName, String deleteTable, long interval) {
+
+		if (indexBase == null || table == null || table.length() == 0 || keyName == null || keyName.length() == 0 || colNames == null || colNames.length == 0) {
+
+			return;
+
+		}
+
+		File indexPath = new File(indexBase, table);
+
+		try {
+
+			if (Shards.isSharded(table)) {
+
+				throw new IOException("sharded table does not support poll: " + table);
+
+			}
+
+			IndexWriter writer = getWriter(indexBase, table);
+
+			while (!Thread.currentThread().isInterrupted()) {
+
+				try {
+
+					if (update(writer, table, colNames, keyName, timeName, deleteName, deleteTable) > 0) {
+
+						SearcherPool.refresh(indexPath);
+
+					}
+
+				} catch (SQLException ex) { // 数据库暂时不可用时等待下次执行
+
+					ex.printStackTrace();
+
+				} catch (RuntimeException ex) { // 个别记录出错不结束轮询
+
+					ex.printStackTrace();
+
+				}
+
+				Thread.sleep(interval);
+
+			}
+
+		} catch (InterruptedException ex) {
+
+			Thread.currentThread().interrupt();
+
+		} catch (IOException ex) {
+
+			ex.printStackTrace();
+
+		} finally {
+
+			closeWriter(indexBase, table);
+
+		}
+
+	}
+
+	/**
+	 * 增量索引表，根据IndexWriter中最近一次提交的检查点读取新增或修改的记录，完成后提交索引并保存新的检查点
+	 * 
+	 * @param writer
+	 *            IndexWriter
+	 * @param table
+	 *            表名
+	 * @param colNames
+	 *            需要索引的列名数组
+	 * @param keyName
+	 *            主键名
+	 * @param timeName
+	 *            修改时间列名，可以为null
+	 * @param deleteName
+	 *            删除标记列名，可以为null
+	 * @param deleteTable
+	 *            已删除主键表名，可以为null
+	 * @return 索引或删除的记录数
+	 * @throws IOException
+	 * @throws SQLException
+	 */
+	public int update(IndexWriter writer, String table, String[] colNames, String keyName, String timeName, String deleteName, String deleteTable) throws IOException, SQLException {
+
+		if (writer == null || table == null || table.length() == 0 || keyName == null || keyName.length() == 0 || colNames == null || colNames.length == 0) {
+
+			return 0;
+
+		}
+
+		Map<String, String> checkpoint = new HashMap<String, String>(getCheckpoint(writer.getDirectory()));
+
+		int count = updateRows(writer, table, colNames, keyName, timeName, deleteName, checkpoint);
+
+		if (deleteTable != null && deleteTable.length() > 0) {
+
+			count += deleteRows(writer, deleteTable, keyName, timeName, checkpoint);
+
+		}
+
+		if (count > 0) {
+
+			writer.commit(checkpoint);
+
+		}
+
+		return count;
+
+	}
+
+	/**
+	 * 读取表当前的最大主键值及最大修改时间，作为完整建索引后的检查点
+	 * 
+	 * @param table
+	 *            表名
+	 * @param keyName
+	 *            主键名
+	 * @param timeName
+	 *            修改时间列名，可以为null
+	 * @return 检查点，表为空时不包含对应的值
+	 * @throws SQLException
+	 */
+	private Map<String, String> maxCheckpoint(String table, String keyName, String timeName) throws SQLException {
+
+		boolean byTime = timeName != null && timeName.length() > 0;
+
+		String sql = "SELECT MAX(" + keyName + ")" + (byTime ? ",MAX(" + timeName + ")" : "") + " FROM " + table;
+
+		Map<String, String> checkpoint = new HashMap<String, String>();
+
+		Connection conn = null;
+
+		PreparedStatement ps = null;
+
+		ResultSet rs = null;
+
+		try {
+
+			conn = db.getConnection();
+
+			ps = conn.prepareStatement(sql);
+
+			rs = ps.executeQuery();
+
+			if (rs.next()) {
+
+				Object keyMax = rs.getObject(1);
+
+				if (keyMax != null) {
+
+					checkpoint.put(KEY_MAX, String.valueOf(keyMax));
+
+				}
+
+				Timestamp timeMax = byTime ? rs.getTimestamp(2) : null;
+
+				if (timeMax != null) {
+
+					checkpoint.put(TIME_MAX, String.valueOf(timeMax.getTime()));
+
+				}
+
+			}
+
+		} finally {
+
+			db.close(rs, ps, conn);
+
+		}
+
+		return checkpoint;
+
+	}
+
+	/**
+	 * 获取索引目录最近一次提交的检查点
+	 * 
+	 * @param dir
+	 *            索引目录
+	 * @return 检查点，索引不存在时为空
+	 * @throws IOException
+	 */
+	public Map<String, String> getCheckpoint(Directory dir) throws IOException {
+
+		try {
+
+			IndexCommit last = null;
+
+			for (IndexCommit commit : IndexReader.listCommits(dir)) {
+
+				if (last == null || commit.getGeneration() > last.getGeneration()) {
+
+					last = commit;
+
+				}
+
+			}
+
+			return last != null ? new HashMap<String, String>(last.getUserData()) : new HashMap<String, String>();
+
+		} catch (IndexNotFoundException ex) {
+
+			return new HashMap<String, String>();
+
+		}
+
+	}
+
+	private int updateRows(IndexWriter writer, String table, String[] colNames, String keyName, String timeName, String deleteName, Map<String, String> checkpoint) throws IOException, SQLException {
+
+		boolean byTime = timeName != null && timeName.length() > 0;
+
+		boolean hasDelete = deleteName != null && deleteName.length() > 0;
+
+		String start = checkpoint.get(byTime ? TIME_MAX : KEY_MAX);
+
+		StringBuilder sql = new StringBuilder("SELECT ");
+
+		sql.append(keyName);
+
+		for (int i = 0; i < colNames.length; i++) {
+
+			sql.append(",");
+
+			sql.append(colNames[i]);
+
+		}
+
+		if (byTime) {
+
+			sql.append(",").append(timeName);
+
+		}
+
+		if (hasDelete) {
+
+			sql.append(",").append(deleteName);
+
+		}
+
+		sql.append(" FROM ").append(table);
+
+		// 修改时间相同的记录可能在上次检查点之后提交，所以包含检查点时间(>=)，重复的记录按主键更新
+		if (start != null) {
+
+			sql.append(" WHERE ").append(byTime ? timeName : keyName).append(byTime ? " >= ?" : " > ?");
+
+		}
+
+		sql.append(" ORDER BY ").append(byTime ? timeName + "," + keyName : keyName);
+
+		Connection conn = null;
+
+		PreparedStatement ps = null;
+
+		ResultSet rs = null;
+
+		int count = 0;
+
+		try {
+
+			conn = db.getConnection();
+
+			ps = conn.prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+
+			ps.setFetchSize(FETCH_SIZE);
+
+			if (start != null) {
+
+				if (byTime) {
+
+					ps.setTimestamp(1, new Timestamp(Long.parseLong(start)));
+
+				} else {
+
+					setKey(ps, 1, start);
+
+				}
+
+			}
+
+			rs = ps.executeQuery();
+
+			String[] colValues = new String[colNames.length];
+
+			String keyMax = checkpoint.get(KEY_MAX);
+
+			long timeStart = start != null && byTime ? Long.parseLong(start) : -1;
+
+			long timeMax = timeStart;
+
+			while (rs.next()) {
+
+				String keyValue = String.valueOf(rs.getObject(keyName));
+
+				if (hasDelete && isDeleted(rs.getObject(deleteName))) {
+
+					writer.deleteDocuments(new Term(keyName.toLowerCase(), keyValue));
+
+				} else {
+
+					for (int i = 0; i < colNames.length; i++) {
+
+						colValues[i] = String.valueOf(rs.getObject(colNames[i]));
+
+					}
+
+					Document doc = document(table, keyName, keyValue, colNames, colValues);
+
+					if (doc != null) {
+
+						writer.updateDocument(new Term(keyName.toLowerCase(), keyValue), doc);
+
+					}
+
+				}
+
+				if (byTime) {
+
+					Timestamp time = rs.getTimestamp(timeName);
+
+					if (time != null && time.getTime() > timeMax) {
+
+						timeMax = time.getTime();
+
+					}
+
+					// 检查点时间的记录已经索引过，不计入修改数，避免每次都提交索引
+					if (time == null || time.getTime() > timeStart) {
+
+						count++;
+
+					}
+
+				} else {
+
+					keyMax = keyValue;
+
+					count++;
+
+				}
+
+			}
+
+			if (byTime && timeMax > timeStart) {
+
+				checkpoint.put(TIME_MAX, String.valueOf(timeMax));
+
+			} else if (keyMax != null) {
+
+				checkpoint.put(KEY_MAX, keyMax);
+
+			}
+
+		} finally {
+
+			db.close(rs, ps, conn);
+
+		}
+
+		return count;
+
+	}
+
+	private int deleteRows(IndexWriter writer, String deleteTable, String keyName, String timeName, Map<String, String> checkpoint) throws IOException, SQLException {
+
+		boolean byTime = timeName != null && timeName.length() > 0;
+
+		String start = checkpoint.get(DELETE_TIME);
+
+		StringBuilder sql = new StringBuilder("SELECT ");
+
+		sql.append(keyName);
+
+		if (byTime) {
+
+			sql.append(",").append(timeName);
+
+		}
+
+		sql.append(" FROM ").append(deleteTable);
+
+		if (byTime && start != null) {
+
+			sql.append(" WHERE ").append(timeName).append(" >= ?");
+
+		}
+
+		Connection conn = null;
+
+		PreparedStatement ps = null;
+
+		ResultSet rs = null;
+
+		IndexReader reader = null;
+
+		int count = 0;
+
+		try {
+
+			conn = db.getConnection();
+
+			ps = conn.prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+
+			ps.setFetchSize(FETCH_SIZE);
+
+			if (byTime && start != null) {
+
+				ps.setTimestamp(1, new Timestamp(Long.parseLong(start)));
+
+			}
+
+			rs = ps.executeQuery();
+
+			long timeStart = byTime && start != null ? Long.parseLong(start) : -1;
+
+			long timeMax = timeStart;
+
+			// 没有修改时间列时每次读取整个已删除主键表，只删除索引中仍然存在的主键，不存在时不计数，避免每次都提交索引
+			reader = byTime ? null : IndexReader.open(writer, true);
+
+			while (rs.next()) {
+
+				Term term = new Term(keyName.toLowerCase(), String.valueOf(rs.getObject(keyName)));
+
+				if (reader != null) {
+
+					if (exists(reader, term)) {
+
+						writer.deleteDocuments(term);
+
+						count++;
+
+					}
+
+					continue;
+
+				}
+
+				writer.deleteDocuments(term);
+
+				Timestamp time = byTime ? rs.getTimestamp(timeName) : null;
+
+				if (time != null && time.getTime() > timeMax) {
+
+					timeMax = time.getTime();
+
+				}
+
+				if (time == null || time.getTime() > timeStart) {
+
+					count++;
+
+				}
+
+			}
+
+			if (byTime && timeMax > timeStart) {
+
+				checkpoint.put(DELETE_TIME, String.valueOf(timeMax));
+
+			}
+
+		} finally {
+
+			db.close(rs, ps, conn);
+
+			if (reader != null) {
+
+				reader.close();
+
+			}
+
+		}
+
+		return count;
+
+	}
+
+	/**
+	 * 索引中是否有未删除的文档包含term
+	 */
+	private static boolean exists(IndexReader reader, Term term) throws IOException {
+
+		TermDocs docs = reader.termDocs(term);
+
+		try {
+
+			return docs.next();
+
+		} finally {
+
+			docs.close();
+
+		}
+
+	}
+
+	private static boolean isDeleted(Object value) {
+
+		if (value == null) {
+
+			return false;
+
+		}
+
+		if (value instanceof Boolean) {
+
+			return ((Boolean) value).booleanValue();
+
+		}
+
+		String s = String.valueOf(value).trim();
+
+		return "1".equals(s) || "true".equalsIgnoreCase(s) || "Y".equalsIgnoreCase(s);
+
+	}
+
+	/**
+	 * 获取表的共享IndexWriter，不存在时打开(更新模式)并注册近实时搜索，
+	 * SearchTable从该IndexWriter获取IndexReader，修改在SearcherPool.REFRESH_INTERVAL内可以搜索到，无需提交索引
+	 * 
+	 * @param indexBase
+	 *            上级索引目录
+	 * @param table
+	 *            表名
+	 * @return IndexWriter
+	 * @throws IOException
+	 */
+	public IndexWriter getWriter(File indexBase, String table) throws IOException {
+
+		return getWriter(new File(indexBase, table));
+
+	}
+
+	/**
+	 * 获取分片的表中主键所在分片的共享IndexWriter，不分片的表与getWriter(indexBase, table)相同
+	 * 
+	 * @param indexBase
+	 *            上级索引目录
+	 * @param table
+	 *            表名
+	 * @param keyValue
+	 *            主键值
+	 * @return IndexWriter
+	 * @throws IOException
+	 */
+	public IndexWriter getWriter(File indexBase, String table, String keyValue) throws IOException {
+
+		return getWriter(Shards.path(indexBase, table, Shards.shard(table, keyValue)));
+
+	}
+
+	private IndexWriter getWriter(File indexPath) throws IOException {
+
+		String path = indexPath.getAbsolutePath();
+
+		IndexWriter writer = WRITERS.get(path);
+
+		if (writer != null) {
+
+			return writer;
+
+		}
+
+		synchronized (WRITERS) {
+
+			writer = WRITERS.get(path);
+
+			if (writer != null) {
+
+				return writer;
+
+			}
+
+			writer = openWriter(indexPath, false);
+
+			try {
+
+				SearcherPool.open(indexPath, writer, APPLY_DELETES);
+
+			} catch (IOException ex) {
+
+				closeWriter(writer, false);
+
+				throw ex;
+
+			}
+
+			WRITERS.put(path, writer);
+
+			Metrics.writer(path, writer);
+
+		}
+
+		return writer;
+
+	}
+
+	/**
+	 * 获取索引目录已经打开的共享IndexWriter
+	 * 
+	 * @param indexPath
+	 *            索引目录
+	 * @return IndexWriter，或null
+	 */
+	static IndexWriter getSharedWriter(File indexPath) {
+
+		return WRITERS.get(indexPath.getAbsolutePath());
+
+	}
+
+	/**
+	 * 使用共享IndexWriter索引一条记录，根据上级索引目录，表名，键名，键值，列名数组，列值数组
+	 * 
+	 * @param indexBase
+	 *            上级索引目录
+	 * @param table
+	 *            表名
+	 * @param keyName
+	 *            键名
+	 * @param keyValue
+	 *            键值
+	 * @param colNames
+	 *            列名数组
+	 * @param colValues
+	 *            列值数组
+	 * @throws IOException
+	 */
+	public void index(File indexBase, String table, String keyName, String keyValue, String[] colNames, String[] colValues) throws IOException {
+
+		index(getWriter(indexBase, table, keyValue), table, keyName, keyValue, colNames, colValues);
+
+	}
+
+	/**
+	 * 使用共享IndexWriter删除一条记录的索引
+	 * 
+	 * @param indexBase
+	 *            上级索引目录
+	 * @param table
+	 *            表名
+	 * @param keyName
+	 *            键名
+	 * @param keyValue
+	 *            键值
+	 * @throws IOException
+	 */
+	public void delete(File indexBase, String table, String keyName, String keyValue) throws IOException {
+
+		if (keyName == null || keyName.length() == 0 || keyValue == null || keyValue.length() == 0) {
+
+			return;
+
+		}
+
+		getWriter(indexBase, table, keyValue).deleteDocuments(new Term(keyName.toLowerCase(), keyValue));
+
+	}
+
+	/**
+	 * 提交共享IndexWriter的修改，近实时搜索不需要提交，提交只用于持久化
+	 * 
+	 * @param indexBase
+	 *            上级索引目录
+	 * @param table
+	 *            表名
+	 * @throws IOException
+	 */
+	public void commit(File indexBase, String table) throws IOException {
+
+		for (File indexPath : Shards.paths(indexBase, table)) {
+
+			IndexWriter writer = WRITERS.get(indexPath.getAbsolutePath());
+
+			if (writer != null) {
+
+				writer.commit();
+
+			}
+
+		}
+
+	}
+
+	/**
+	 * 关闭表的共享IndexWriter，先关闭近实时搜索，再提交并关闭IndexWriter
+	 * 
+	 * @param indexBase
+	 *            上级索引目录
+	 * @param table
+	 *            表名
+	 */
+	public void closeWriter(File indexBase, String table) {
+
+		if (Shards.isSharded(table)) {
+
+			for (File indexPath : Shards.paths(indexBase, table)) {
+
+				closeWriter(indexPath);
+
+			}
+
+		}
+
+		closeWriter(new File(indexBase, table));
+
+	}
+
+	private void closeWriter(File indexPath) {
+
+		IndexWriter writer = null;
+
+		synchronized (WRITERS) {
+
+			writer = WRITERS.remove(indexPath.getAbsolutePath());
+
+		}
+
+		Metrics.removeWriter(indexPath.getAbsolutePath());
+
+		if (writer != null) {
+
+			SearcherPool.close(indexPath);
+
+			closeWriter(writer, false);
+
+		}
+
+	}
+
+	/**
+	 * 获取最近一次索引的吞吐量统计
+	 * 
+	 * @return IndexReport，或null
+	 */
+	public IndexReport getReport() {
+
+		return report;
+
+	}
+
+	/**
+	 * 表记录处理
+	 */
+	public interface RowHandler {
+
+		/**
+		 * 处理一条记录，colValues在下一条记录时会被重用
+		 * 
+		 * @param keyValue
+		 *            键值
+		 * @param colValues
+		 *            列值数组
+		 * @throws IOException
+		 */
+		void row(String keyValue, String[] colValues) throws IOException;
+
+	}
+
 	public void index(String indexBase, String table, String[] colNames, String keyName) {
 
 		index(indexBase, table, colNames, keyName, true);
@@ -0,0 +1,150 @@
+package com.datagreatwall.searchengine;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.util.ReaderUtil;
+
+/**
+ * 
+ * 通过FieldCache获取搜索结果的键值，不读取存储的文档
+ * 
+ * 键值数组按段(segment)缓存在内存中，每个段只在第一次使用时加载一次，索引重新打开后未改变的段继续使用已加载的数组
+ * 
+ * @author 石瑜
+ * 
+ */
+public class KeyCache {
+
+	private KeyCache() {
+
+	}
+
+	/**
+	 * 获取搜索结果的键值
+	 * 
+	 * @param searcher
+	 *            IndexSearcher
+	 * @param docs
+	 *            搜索结果
+	 * @param keyName
+	 *            键名
+	 * @return 键值数组
+	 * @throws IOException
+	 */
+	public static String[] getKeys(IndexSearcher searcher, ScoreDoc[] docs, String keyName) throws IOException {
+
+		IndexReader[] readers = searcher.getSubReaders();
+
+		int[] starts = starts(readers);
+
+		String[][] keys = new String[readers.length][];
+
+		String[] keyValues = new String[docs.length];
+
+		for (int i = 0; i < docs.length; i++) {
+
+			int n = ReaderUtil.subIndex(docs[i].doc, starts);
+
+			if (keys[n] == null) {
+
+				keys[n] = FieldCache.DEFAULT.getStrings(readers[n], keyName);
+
+			}
+
+			keyValues[i] = keys[n][docs[i].doc - starts[n]];
+
+		}
+
+		return keyValues;
+
+	}
+
+	/**
+	 * 获取搜索结果的数字键值
+	 * 
+	 * @param searcher
+	 *            IndexSearcher
+	 * @param docs
+	 *            搜索结果
+	 * @param keyName
+	 *            键名
+	 * @return 键值数组
+	 * @throws IOException
+	 * @throws NumberFormatException
+	 *             键值不是数字
+	 */
+	public static long[] getLongKeys(IndexSearcher searcher, ScoreDoc[] docs, String keyName) throws IOException {
+
+		IndexReader[] readers = searcher.getSubReaders();
+
+		int[] starts = starts(readers);
+
+		long[][] keys = new long[readers.length][];
+
+		long[] keyValues = new long[docs.length];
+
+		for (int i = 0; i < docs.length; i++) {
+
+			int n = ReaderUtil.subIndex(docs[i].doc, starts);
+
+			if (keys[n] == null) {
+
+				keys[n] = FieldCache.DEFAULT.getLongs(readers[n], keyName);
+
+			}
+
+			keyValues[i] = keys[n][docs[i].doc - starts[n]];
+
+		}
+
+		return keyValues;
+
+	}
+
+	/**
+	 * 预先加载所有段的键值数组
+	 * 
+	 * @param searcher
+	 *            IndexSearcher
+	 * @param keyName
+	 *            键名
+	 * @throws IOException
+	 */
+	public static void load(IndexSearcher searcher, String keyName) throws IOException {
+
+		IndexReader[] readers = searcher.getSubReaders();
+
+		for (int i = 0; i < readers.length; i++) {
+
+			FieldCache.DEFAULT.getStrings(readers[i], keyName);
+
+		}
+
+	}
+
+	/**
+	 * 每个段的起始文档号
+	 */
+	static int[] starts(IndexReader[] readers) {
+
+		int[] starts = new int[readers.length];
+
+		int maxDoc = 0;
+
+		for (int i = 0; i < readers.length; i++) {
+
+			starts[i] = maxDoc;
+
+			maxDoc += readers[i].maxDoc();
+
+		}
+
+		return starts;
+
+	}
+
+}
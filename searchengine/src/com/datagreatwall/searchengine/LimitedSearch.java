@@ -0,0 +1,242 @@
+package com.datagreatwall.searchengine;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MultiCollector;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TimeLimitingCollector;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.search.Weight;
+
+/**
+ * 
+ * 限制搜索时间，超时时返回已经收集的部分结果
+ * 
+ * 按评分排序时使用TimeLimitingCollector，计时精度为其全局计时线程的精度(默认20毫秒)；
+ * 按索引顺序返回时，每个段按文档号顺序收集，收集到top条结果后不再评分其余文档，返回的是任意top条符合条件的结果，
+ * 不保证是主键最小的(段合并、并行建索引及updateDocument都会改变文档号与主键的顺序关系)，此时totalHits为已收集的结果数；
+ * 有统计全部文档的Collector(如Facets)时，收集到top条结果后继续遍历但不再评分，totalHits为全部符合条件的文档数
+ * 
+ * @author 石瑜
+ * 
+ */
+public class LimitedSearch {
+
+	private static final int CHECK_INTERVAL = 256; // 按索引顺序收集时，每收集多少个文档检查一次时间
+
+	private LimitedSearch() {
+
+	}
+
+	/**
+	 * 搜索
+	 * 
+	 * @param searcher
+	 *            IndexSearcher
+	 * @param query
+	 *            Query
+	 * @param top
+	 *            最多返回结果数
+	 * @param timeout
+	 *            时间限制(毫秒)，小于1时不限制
+	 * @param indexOrder
+	 *            是否收集到top条任意符合条件的结果后提前结束
+	 * @return Result
+	 * @throws IOException
+	 */
+	public static Result search(IndexSearcher searcher, Query query, int top, long timeout, boolean indexOrder) throws IOException {
+
+		return search(searcher, query, top, timeout, indexOrder, null);
+
+	}
+
+	/**
+	 * 搜索，同时由counter收集全部符合条件的文档
+	 * 
+	 * @param searcher
+	 *            IndexSearcher
+	 * @param query
+	 *            Query
+	 * @param top
+	 *            最多返回结果数
+	 * @param timeout
+	 *            时间限制(毫秒)，小于1时不限制
+	 * @param indexOrder
+	 *            是否收集到top条任意符合条件的结果后提前结束
+	 * @param counter
+	 *            收集全部符合条件的文档的Collector，如Facets.Counter，为null时与不带counter的search相同
+	 * @return Result
+	 * @throws IOException
+	 */
+	public static Result search(IndexSearcher searcher, Query query, int top, long timeout, boolean indexOrder, Collector counter) throws IOException {
+
+		if (indexOrder) {
+
+			return searchIndexOrder(searcher, query, top, timeout, counter);
+
+		}
+
+		TopScoreDocCollector collector = TopScoreDocCollector.create(top, false);
+
+		Collector c = counter == null ? collector : MultiCollector.wrap(collector, counter);
+
+		if (timeout > 0) {
+
+			c = new TimeLimitingCollector(c, TimeLimitingCollector.getGlobalCounter(), timeout);
+
+		}
+
+		boolean partial = false;
+
+		try {
+
+			searcher.search(query, c);
+
+		} catch (TimeLimitingCollector.TimeExceededException ex) {
+
+			// 已经收集的结果仍然有效
+			partial = true;
+
+			Metrics.count("search.timeouts");
+
+		}
+
+		TopDocs docs = collector.topDocs();
+
+		return new Result(docs.totalHits, docs.scoreDocs, docs.getMaxScore(), partial);
+
+	}
+
+	/**
+	 * 按文档号顺序逐段收集，收集到top条结果后结束，有counter时继续遍历其余文档
+	 */
+	private static Result searchIndexOrder(IndexSearcher searcher, Query query, int top, long timeout, Collector counter) throws IOException {
+
+		Weight weight = searcher.createNormalizedWeight(query);
+
+		IndexReader[] readers = searcher.getSubReaders();
+
+		int[] starts = KeyCache.starts(readers);
+
+		long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+
+		List<ScoreDoc> docs = new ArrayList<ScoreDoc>(Math.min(top, 1024));
+
+		float maxScore = Float.NaN;
+
+		boolean partial = false;
+
+		int hits = 0;
+
+		for (int i = 0; i < readers.length && (docs.size() < top || counter != null) && !partial; i++) {
+
+			if (System.currentTimeMillis() > deadline) {
+
+				partial = true;
+
+				Metrics.count("search.timeouts");
+
+				break;
+
+			}
+
+			Scorer scorer = weight.scorer(readers[i], true, false);
+
+			if (scorer == null) {
+
+				continue;
+
+			}
+
+			if (counter != null) {
+
+				counter.setNextReader(readers[i], starts[i]);
+
+				counter.setScorer(scorer);
+
+			}
+
+			int doc;
+
+			while ((doc = scorer.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+
+				hits++;
+
+				if (counter != null) {
+
+					counter.collect(doc);
+
+				}
+
+				if (docs.size() < top) {
+
+					float score = scorer.score();
+
+					docs.add(new ScoreDoc(starts[i] + doc, score));
+
+					maxScore = Float.isNaN(maxScore) ? score : Math.max(maxScore, score);
+
+					// 已有top条结果，不再评分其余文档
+					if (docs.size() >= top && counter == null) {
+
+						Metrics.count("search.terminated");
+
+						break;
+
+					}
+
+				}
+
+				if (hits % CHECK_INTERVAL == 0 && System.currentTimeMillis() > deadline) {
+
+					partial = true;
+
+					Metrics.count("search.timeouts");
+
+					break;
+
+				}
+
+			}
+
+		}
+
+		return new Result(hits, docs.toArray(new ScoreDoc[docs.size()]), maxScore, partial);
+
+	}
+
+	/**
+	 * 搜索结果，partial为true表示超时，只包括超时前收集的结果
+	 */
+	public static class Result extends TopDocs {
+
+		private static final long serialVersionUID = 1L;
+
+		private final boolean partial;
+
+		public Result(int totalHits, ScoreDoc[] scoreDocs, float maxScore, boolean partial) {
+
+			super(totalHits, scoreDocs, maxScore);
+
+			this.partial = partial;
+
+		}
+
+		public boolean isPartial() {
+
+			return partial;
+
+		}
+
+	}
+
+}
@@ -0,0 +1,634 @@
+package com.datagreatwall.searchengine;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import org.apache.lucene.index.IndexWriter;
+
+/**
+ * 
+ * 索引及搜索的统计：延迟及数值分布(Histogram)，计数及每秒速率，当前值(Gauge)
+ * 
+ * 通过系统属性searchengine.metrics=true启用，未启用时记录方法只读取一次ENABLED即返回；
+ * 启用时加载本类即注册JMX MBean(MBEAN_NAME)，设置了searchengine.metrics.reporter时同时启动MetricsReporter定时输出
+ * 
+ * 统计名：
+ * search.table.*, search.files.*：queries, parse, search, load(读取键值), hits, errors, cache.hits；search.table.batches, search.table.batch.size；search.cursor.expired；
+ * index.*：read, extract, write(每条记录纳秒数), rows, bytes, skips, deletes, failures, merge, merge.docs；
+ * jdbc.query, jdbc.fetch；searcher.reopen, searcher.warm, searcher.warm.queries；writer.[索引目录].ramBytes, writer.[索引目录].ramDocs
+ * 
+ * @author 石瑜
+ * 
+ */
+public class Metrics {
+
+	public static boolean ENABLED = Boolean.getBoolean("searchengine.metrics"); // 是否记录统计
+
+	public static String REPORTER = System.getProperty("searchengine.metrics.reporter"); // MetricsReporter类名，为null时输出到标准输出
+
+	public static long REPORT_INTERVAL = 60000; // 定时输出统计的间隔毫秒数
+
+	public static final String MBEAN_NAME = "com.datagreatwall.searchengine:type=Metrics";
+
+	/**
+	 * 输出到标准输出
+	 */
+	public static final MetricsReporter PRINT = new MetricsReporter() {
+
+		public void report(Map<String, Number> metrics) {
+
+			StringBuilder sb = new StringBuilder();
+
+			for (Map.Entry<String, Number> entry : metrics.entrySet()) {
+
+				sb.append(entry.getKey()).append(":\t").append(entry.getValue()).append('\n');
+
+			}
+
+			System.out.print(sb);
+
+		}
+
+	};
+
+	private static final ConcurrentHashMap<String, Histogram> HISTOGRAMS = new ConcurrentHashMap<String, Histogram>();
+
+	private static final ConcurrentHashMap<String, AtomicLong> COUNTERS = new ConcurrentHashMap<String, AtomicLong>();
+
+	private static final ConcurrentHashMap<String, Gauge> GAUGES = new ConcurrentHashMap<String, Gauge>();
+
+	private static volatile long since = System.nanoTime(); // 计算平均速率的起始时间
+
+	// 计数在上次采样时的值及最近一个采样间隔的每秒速率，采样间隔至少为REPORT_INTERVAL
+	private static final ConcurrentHashMap<String, Long> SAMPLES = new ConcurrentHashMap<String, Long>();
+
+	private static final ConcurrentHashMap<String, Double> RATES = new ConcurrentHashMap<String, Double>();
+
+	private static long sampled = System.nanoTime();
+
+	private static ScheduledExecutorService reporter = null;
+
+	static {
+
+		if (ENABLED) {
+
+			registerMBean();
+
+			if (REPORTER != null) {
+
+				startReporter();
+
+			}
+
+		}
+
+	}
+
+	/**
+	 * 当前值，如IndexWriter缓存的字节数
+	 */
+	public interface Gauge {
+
+		long getValue();
+
+	}
+
+	private Metrics() {
+
+	}
+
+	/**
+	 * 开始计时
+	 * 
+	 * @return 当前纳秒时间，未启用时返回0
+	 */
+	public static long start() {
+
+		return ENABLED ? System.nanoTime() : 0;
+
+	}
+
+	/**
+	 * 记录从start开始的纳秒数
+	 * 
+	 * @param name
+	 *            统计名
+	 * @param start
+	 *            start()返回的开始时间
+	 * @return 当前纳秒时间，可作为下一阶段的开始时间，未启用时返回0
+	 */
+	public static long time(String name, long start) {
+
+		if (!ENABLED || start == 0) {
+
+			return 0;
+
+		}
+
+		long now = System.nanoTime();
+
+		histogram(name).record(now - start);
+
+		return now;
+
+	}
+
+	/**
+	 * 记录一个值，如命中数
+	 */
+	public static void record(String name, long value) {
+
+		if (ENABLED) {
+
+			histogram(name).record(value);
+
+		}
+
+	}
+
+	/**
+	 * 计数加1
+	 */
+	public static void count(String name) {
+
+		count(name, 1);
+
+	}
+
+	/**
+	 * 计数加n
+	 */
+	public static void count(String name, long n) {
+
+		if (ENABLED) {
+
+			counter(name).addAndGet(n);
+
+		}
+
+	}
+
+	public static Histogram histogram(String name) {
+
+		Histogram histogram = HISTOGRAMS.get(name);
+
+		if (histogram == null) {
+
+			histogram = new Histogram();
+
+			Histogram exists = HISTOGRAMS.putIfAbsent(name, histogram);
+
+			if (exists != null) {
+
+				histogram = exists;
+
+			}
+
+		}
+
+		return histogram;
+
+	}
+
+	public static AtomicLong counter(String name) {
+
+		AtomicLong counter = COUNTERS.get(name);
+
+		if (counter == null) {
+
+			counter = new AtomicLong();
+
+			AtomicLong exists = COUNTERS.putIfAbsent(name, counter);
+
+			if (exists != null) {
+
+				counter = exists;
+
+			}
+
+		}
+
+		return counter;
+
+	}
+
+	/**
+	 * 注册当前值，同名的替换
+	 */
+	public static void gauge(String name, Gauge gauge) {
+
+		GAUGES.put(name, gauge);
+
+	}
+
+	public static void removeGauge(String name) {
+
+		GAUGES.remove(name);
+
+	}
+
+	/**
+	 * 注册IndexWriter缓存的字节数及文档数
+	 * 
+	 * @param name
+	 *            名称，如索引目录
+	 * @param writer
+	 *            IndexWriter
+	 */
+	public static void writer(String name, final IndexWriter writer) {
+
+		gauge("writer." + name + ".ramBytes", new Gauge() {
+
+			public long getValue() {
+
+				return writer.ramSizeInBytes();
+
+			}
+
+		});
+
+		gauge("writer." + name + ".ramDocs", new Gauge() {
+
+			public long getValue() {
+
+				return writer.numRamDocs();
+
+			}
+
+		});
+
+	}
+
+	public static void removeWriter(String name) {
+
+		removeGauge("writer." + name + ".ramBytes");
+
+		removeGauge("writer." + name + ".ramDocs");
+
+	}
+
+	/**
+	 * 所有统计值：Histogram输出count、mean、p50、p90、p99、max，计数输出总数，rate(最近一个采样间隔的每秒数，
+	 * 第一个间隔结束前为平均值)及avgRate(reset以来的平均每秒数)，按统计名排序
+	 * 
+	 * @return 统计名 -> 值
+	 */
+	public static Map<String, Number> snapshot() {
+
+		TreeMap<String, Number> metrics = new TreeMap<String, Number>();
+
+		for (Map.Entry<String, Histogram> entry : HISTOGRAMS.entrySet()) {
+
+			String name = entry.getKey();
+
+			Histogram h = entry.getValue();
+
+			metrics.put(name + ".count", h.getCount());
+
+			metrics.put(name + ".mean", h.getMean());
+
+			metrics.put(name + ".p50", h.getPercentile(50));
+
+			metrics.put(name + ".p90", h.getPercentile(90));
+
+			metrics.put(name + ".p99", h.getPercentile(99));
+
+			metrics.put(name + ".max", h.getMax());
+
+		}
+
+		sample();
+
+		double seconds = Math.max(1, System.nanoTime() - since) / 1e9;
+
+		for (Map.Entry<String, AtomicLong> entry : COUNTERS.entrySet()) {
+
+			long count = entry.getValue().get();
+
+			Double rate = RATES.get(entry.getKey());
+
+			metrics.put(entry.getKey(), count);
+
+			metrics.put(entry.getKey() + ".rate", rate != null ? rate : count / seconds);
+
+			metrics.put(entry.getKey() + ".avgRate", count / seconds);
+
+		}
+
+		for (Map.Entry<String, Gauge> entry : GAUGES.entrySet()) {
+
+			try {
+
+				metrics.put(entry.getKey(), entry.getValue().getValue());
+
+			} catch (RuntimeException ex) { // 如IndexWriter已经关闭
+
+			}
+
+		}
+
+		return metrics;
+
+	}
+
+	/**
+	 * 距上次采样超过REPORT_INTERVAL时，按两次采样之间的计数增量计算速率
+	 */
+	private static synchronized void sample() {
+
+		long now = System.nanoTime();
+
+		if (now - sampled < REPORT_INTERVAL * 1000000L) {
+
+			return;
+
+		}
+
+		double seconds = (now - sampled) / 1e9;
+
+		for (Map.Entry<String, AtomicLong> entry : COUNTERS.entrySet()) {
+
+			long count = entry.getValue().get();
+
+			Long last = SAMPLES.put(entry.getKey(), count);
+
+			RATES.put(entry.getKey(), (count - (last != null ? last : 0)) / seconds);
+
+		}
+
+		sampled = now;
+
+	}
+
+	/**
+	 * 清空Histogram及计数，速率重新开始计算
+	 */
+	public static void reset() {
+
+		for (Histogram h : HISTOGRAMS.values()) {
+
+			h.reset();
+
+		}
+
+		for (AtomicLong counter : COUNTERS.values()) {
+
+			counter.set(0);
+
+		}
+
+		synchronized (Metrics.class) {
+
+			SAMPLES.clear();
+
+			RATES.clear();
+
+			sampled = System.nanoTime();
+
+		}
+
+		since = System.nanoTime();
+
+	}
+
+	/**
+	 * 按类名创建MetricsReporter，失败时使用PRINT
+	 */
+	public static MetricsReporter newReporter(String className) {
+
+		if (className != null && className.trim().length() > 0) {
+
+			try {
+
+				return (MetricsReporter) Class.forName(className.trim()).newInstance();
+
+			} catch (Exception ex) {
+
+				ex.printStackTrace();
+
+			}
+
+		}
+
+		return PRINT;
+
+	}
+
+	/**
+	 * 启动后台线程，每REPORT_INTERVAL毫秒输出一次统计
+	 */
+	public static synchronized void startReporter() {
+
+		startReporter(newReporter(REPORTER));
+
+	}
+
+	/**
+	 * 启动后台线程，每REPORT_INTERVAL毫秒使用指定的MetricsReporter输出一次统计
+	 * 
+	 * @param metricsReporter
+	 *            MetricsReporter
+	 */
+	public static synchronized void startReporter(final MetricsReporter metricsReporter) {
+
+		stopReporter();
+
+		reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			public Thread newThread(Runnable r) {
+
+				Thread t = new Thread(r, "metrics-reporter");
+
+				t.setDaemon(true);
+
+				return t;
+
+			}
+
+		});
+
+		reporter.scheduleWithFixedDelay(new Runnable() {
+
+			public void run() {
+
+				try {
+
+					metricsReporter.report(snapshot());
+
+				} catch (Throwable ex) { // 输出失败不停止定时输出
+
+					ex.printStackTrace();
+
+				}
+
+			}
+
+		}, REPORT_INTERVAL, REPORT_INTERVAL, TimeUnit.MILLISECONDS);
+
+	}
+
+	public static synchronized void stopReporter() {
+
+		if (reporter != null) {
+
+			reporter.shutdown();
+
+			reporter = null;
+
+		}
+
+	}
+
+	/**
+	 * 注册JMX MBean，已经注册时忽略
+	 */
+	public static synchronized void registerMBean() {
+
+		try {
+
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+			ObjectName name = new ObjectName(MBEAN_NAME);
+
+			if (!server.isRegistered(name)) {
+
+				server.registerMBean(new MBean(), name);
+
+			}
+
+		} catch (Exception ex) {
+
+			ex.printStackTrace();
+
+		}
+
+	}
+
+	public static synchronized void unregisterMBean() {
+
+		try {
+
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+			ObjectName name = new ObjectName(MBEAN_NAME);
+
+			if (server.isRegistered(name)) {
+
+				server.unregisterMBean(name);
+
+			}
+
+		} catch (Exception ex) {
+
+			ex.printStackTrace();
+
+		}
+
+	}
+
+	/**
+	 * 统计值作为只读属性，reset操作清空统计
+	 */
+	private static class MBean implements DynamicMBean {
+
+		public Object getAttribute(String attribute) throws AttributeNotFoundException {
+
+			Number value = snapshot().get(attribute);
+
+			if (value == null) {
+
+				throw new AttributeNotFoundException(attribute);
+
+			}
+
+			return value;
+
+		}
+
+		public AttributeList getAttributes(String[] attributes) {
+
+			Map<String, Number> metrics = snapshot();
+
+			AttributeList list = new AttributeList();
+
+			for (int i = 0; i < attributes.length; i++) {
+
+				Number value = metrics.get(attributes[i]);
+
+				if (value != null) {
+
+					list.add(new Attribute(attributes[i], value));
+
+				}
+
+			}
+
+			return list;
+
+		}
+
+		public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+
+			throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+
+		}
+
+		public AttributeList setAttributes(AttributeList attributes) {
+
+			return new AttributeList();
+
+		}
+
+		public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+
+			if ("reset".equals(actionName)) {
+
+				reset();
+
+				return null;
+
+			}
+
+			throw new ReflectionException(new NoSuchMethodException(actionName));
+
+		}
+
+		public MBeanInfo getMBeanInfo() {
+
+			List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+
+			for (Map.Entry<String, Number> entry : snapshot().entrySet()) {
+
+				attributes.add(new MBeanAttributeInfo(entry.getKey(), entry.getValue().getClass().getName(), entry.getKey(), true, false, false));
+
+			}
+
+			MBeanOperationInfo reset = new MBeanOperationInfo("reset", "reset histograms and counters", null, "void", MBeanOperationInfo.ACTION);
+
+			return new MBeanInfo(Metrics.class.getName(), "searchengine metrics", attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null, new MBeanOperationInfo[] { reset }, null);
+
+		}
+
+	}
+
+}
@@ -0,0 +1,22 @@
+package com.datagreatwall.searchengine;
+
+import java.util.Map;
+
+/**
+ * 
+ * 定时输出Metrics，如写入日志或发送到监控系统，实现必须有无参数的构造函数
+ * 
+ * @author 石瑜
+ * 
+ */
+public interface MetricsReporter {
+
+	/**
+	 * 输出所有统计值
+	 * 
+	 * @param metrics
+	 *            统计名 -> 值，按统计名排序
+	 */
+	void report(Map<String, Number> metrics);
+
+}
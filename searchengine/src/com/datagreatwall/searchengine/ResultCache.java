@@ -0,0 +1,254 @@
+package com.datagreatwall.searchengine;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 
+ * 搜索结果缓存，按最近最少使用(LRU)淘汰，缓存占用内存超过最大字节数时淘汰最久未使用的结果
+ * 
+ * 每个结果记录生成时IndexReader的版本，版本改变(索引已重新打开)后结果自动失效
+ * 
+ * @author 石瑜
+ * 
+ */
+public class ResultCache {
+
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(1024, 0.75f, true);
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private long maxBytes = 0;
+
+	private long bytes = 0;
+
+	/**
+	 * @param maxBytes
+	 *            缓存最大字节数，小于1时不缓存
+	 */
+	public ResultCache(long maxBytes) {
+
+		this.maxBytes = maxBytes;
+
+	}
+
+	/**
+	 * 获取缓存的键值数组
+	 * 
+	 * @param key
+	 *            缓存键
+	 * @param version
+	 *            当前IndexReader版本
+	 * @return 键值数组的副本，或null
+	 */
+	public String[] get(String key, long version) {
+
+		if (maxBytes < 1) {
+
+			return null;
+
+		}
+
+		Entry entry = null;
+
+		synchronized (this) {
+
+			entry = entries.get(key);
+
+			if (entry != null && entry.version != version) { // 索引已经改变
+
+				remove(key);
+
+				entry = null;
+
+			}
+
+		}
+
+		if (entry == null) {
+
+			misses.incrementAndGet();
+
+			return null;
+
+		}
+
+		hits.incrementAndGet();
+
+		return entry.values.clone();
+
+	}
+
+	/**
+	 * 缓存键值数组
+	 * 
+	 * @param key
+	 *            缓存键
+	 * @param version
+	 *            生成结果时IndexReader的版本
+	 * @param values
+	 *            键值数组
+	 */
+	public void put(String key, long version, String[] values) {
+
+		if (maxBytes < 1 || key == null || values == null) {
+
+			return;
+
+		}
+
+		Entry entry = new Entry(version, values.clone(), size(key, values));
+
+		if (entry.bytes > maxBytes) {
+
+			return;
+
+		}
+
+		synchronized (this) {
+
+			remove(key);
+
+			entries.put(key, entry);
+
+			bytes += entry.bytes;
+
+			// 按最近最少使用淘汰
+			Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+
+			while (bytes > maxBytes && it.hasNext()) {
+
+				bytes -= it.next().getValue().bytes;
+
+				it.remove();
+
+			}
+
+		}
+
+	}
+
+	private void remove(String key) {
+
+		Entry old = entries.remove(key);
+
+		if (old != null) {
+
+			bytes -= old.bytes;
+
+		}
+
+	}
+
+	/**
+	 * 清空缓存
+	 */
+	public synchronized void clear() {
+
+		entries.clear();
+
+		bytes = 0;
+
+	}
+
+	public synchronized void setMaxBytes(long maxBytes) {
+
+		this.maxBytes = maxBytes;
+
+		if (maxBytes < 1) {
+
+			clear();
+
+		}
+
+	}
+
+	public synchronized int size() {
+
+		return entries.size();
+
+	}
+
+	public synchronized long getBytes() {
+
+		return bytes;
+
+	}
+
+	public long getHits() {
+
+		return hits.get();
+
+	}
+
+	public long getMisses() {
+
+		return misses.get();
+
+	}
+
+	/**
+	 * 命中率
+	 */
+	public double getHitRatio() {
+
+		long h = hits.get();
+
+		long total = h + misses.get();
+
+		return total == 0 ? 0 : (double) h / total;
+
+	}
+
+	public String toString() {
+
+		return String.format("entries:\t%d\tbytes:\t%d\thits:\t%d\tmisses:\t%d\thit ratio:\t%.3f", size(), getBytes(), getHits(), getMisses(), getHitRatio());
+
+	}
+
+	/**
+	 * 估算缓存项占用的字节数
+	 */
+	private static long size(String key, String[] values) {
+
+		long size = 64 + 40 + key.length() * 2 + 16 + values.length * 8;
+
+		for (int i = 0; i < values.length; i++) {
+
+			if (values[i] != null) {
+
+				size += 40 + values[i].length() * 2;
+
+			}
+
+		}
+
+		return size;
+
+	}
+
+	private static class Entry {
+
+		final long version;
+
+		final String[] values;
+
+		final long bytes;
+
+		Entry(long version, String[] values, long bytes) {
+
+			this.version = version;
+
+			this.values = values;
+
+			this.bytes = bytes;
+
+		}
+
+	}
+
+}
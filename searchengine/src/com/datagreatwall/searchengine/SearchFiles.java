@@ -2,20 +2,18 @@ package com.datagreatwall.searchengine;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
 
-import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.cn.smart.SmartChineseAnalyzer;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.queryParser.ParseException;
-import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.Filter;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TopDocs;
-import org.apache.lucene.store.FSDirectory;
-import org.apache.lucene.util.Version;
 
 /**
  * 搜索文本或HTML文件
@@ -27,8 +25,8 @@ public class SearchFiles {
 
 	public int topDocs = 20; // 返回符合条件的最多文件数默认值
 
-	// 因为IndexSearcher不需要同步，所以可以使用HashMap，不必使用Hashtable
-	public static HashMap<String, IndexSearcher> SEARCHER = new HashMap<String, IndexSearcher>();
+	// 按修改时间倒序，IndexFiles以NumericField索引time，与增量索引共用FieldCache
+	private static final Sort TIME_SORT = new Sort(new SortField("time", FieldCache.NUMERIC_UTILS_LONG_PARSER, true));
 
 	public static void main(String[] args) {
 
@@ -66,105 +64,155 @@ public class SearchFiles {
 
 	}
 
+	/**
+	 * 获取索引目录对应的IndexSearcher，使用完毕后必须调用releaseSearcher
+	 * 
+	 * @param indexPath
+	 *            索引目录
+	 * @return IndexSearcher，或null
+	 */
 	public IndexSearcher getSearcher(File indexPath) {
 
-		if (indexPath == null) {
+		return SearcherPool.acquire(indexPath);
 
-			return null;
+	}
 
-		}
+	public int getTopDocs() {
 
-		String path = indexPath.getAbsolutePath();
+		return topDocs;
 
-		IndexSearcher searcher = SEARCHER.get(path);
+	}
 
-		// 索引目录对应的IndexSearcher已经存在
-		if (searcher != null) {
+	public String[] search(File indexPath, String queries) {
 
-			try {
+		return search(indexPath, queries, topDocs);
 
-				IndexReader reader = searcher.getIndexReader();
+	}
 
-				if (!reader.isCurrent()) { // IndexReader已经改变
+	/**
+	 * 搜索文件，按指定索引目录，关键字，搜索结果最多文件数
+	 * 
+	 * @param indexPath
+	 *            索引目录
+	 * @param queries
+	 *            关键字
+	 * @param top
+	 *            最多文件数
+	 * @return
+	 */
+	public String[] search(File indexPath, String queries, int top) {
 
-					reader = IndexReader.openIfChanged(reader);
+		if (indexPath == null || queries == null) {
 
-					searcher = new IndexSearcher(reader);
+			return null;
 
-					SEARCHER.put(path, searcher);
+		}
 
-				}
+		queries = queries.replaceAll("\\p{Punct}|\\p{Space}", " ").trim();
 
-				return searcher;
+		if (queries.length() == 0) {
 
-			} catch (IOException ex) {
+			return null;
 
-				ex.printStackTrace();
+		}
 
-			}
+		IndexSearcher searcher = getSearcher(indexPath);
 
-		}
+		if (searcher == null) {
 
-		// 新建 IndexReader
-		try {
+			return null;
 
-			IndexReader reader = IndexReader.open(FSDirectory.open(indexPath));
+		}
 
-			searcher = new IndexSearcher(reader);
+		Warmer.record(indexPath, queries, new String[] { "value" }, false, null);
 
-			SEARCHER.put(path, searcher);
+		try {
 
-		} catch (IOException ex) {
+			return search(searcher, queries, top);
 
-			ex.printStackTrace();
+		} finally {
 
-			return null;
+			releaseSearcher(indexPath, searcher);
 
 		}
 
-		return searcher;
-
 	}
 
-	public int getTopDocs() {
+	/**
+	 * 使用指定的IndexSearcher搜索文件，按关键字，搜索结果最多文件数
+	 * 
+	 * @param searcher
+	 *            IndexSearcher
+	 * @param queries
+	 *            关键字
+	 * @param top
+	 *            最多文件数
+	 * @return 文件路径数组，或null
+	 */
+	public String[] search(IndexSearcher searcher, String queries, int top) {
 
-		return topDocs;
+		SearchResult result = search(searcher, queries, null, false, top);
+
+		return result != null ? result.getKeys() : null;
 
 	}
 
-	public String[] search(File indexPath, String queries) {
+	/**
+	 * 按修改时间范围搜索文件，时间范围使用缓存的NumericRangeFilter，只搜索范围内的文件
+	 * 
+	 * @param indexPath
+	 *            索引目录
+	 * @param queries
+	 *            关键字，为null或空时返回时间范围内的全部文件
+	 * @param timeFrom
+	 *            最早修改时间(毫秒，包括)，为null时不限制
+	 * @param timeTo
+	 *            最晚修改时间(毫秒，包括)，为null时不限制
+	 * @param latest
+	 *            是否按修改时间倒序(最新的在前)，否则按相关度
+	 * @param top
+	 *            最多文件数
+	 * @return SearchResult，或null
+	 */
+	public SearchResult search(File indexPath, String queries, Long timeFrom, Long timeTo, boolean latest, int top) {
 
-		return search(indexPath, queries, topDocs);
+		Filter filter = timeFrom != null || timeTo != null ? Filters.range("time", timeFrom, timeTo) : null;
+
+		return search(indexPath, queries, filter, latest, top);
 
 	}
 
 	/**
-	 * 搜索文件，按指定索引目录，关键字，搜索结果最多文件数
+	 * 搜索最近一段时间内修改的文件，如最近7天
 	 * 
 	 * @param indexPath
 	 *            索引目录
 	 * @param queries
-	 *            关键字
+	 *            关键字，为null或空时返回时间范围内的全部文件
+	 * @param period
+	 *            毫秒数，开始时间按Filters.TIME_GRANULARITY取整
+	 * @param latest
+	 *            是否按修改时间倒序(最新的在前)，否则按相关度
 	 * @param top
 	 *            最多文件数
-	 * @return
+	 * @return SearchResult，或null
 	 */
-	public String[] search(File indexPath, String queries, int top) {
+	public SearchResult searchRecent(File indexPath, String queries, long period, boolean latest, int top) {
 
-		if (indexPath == null || queries == null) {
-
-			return null;
+		return search(indexPath, queries, Filters.recent("time", period), latest, top);
 
-		}
+	}
 
-		queries = queries.replaceAll("\\p{Punct}|\\p{Space}", " ").trim();
+	private SearchResult search(File indexPath, String queries, Filter filter, boolean latest, int top) {
 
-		if (queries.length() == 0) {
+		if (indexPath == null) {
 
 			return null;
 
 		}
 
+		queries = queries == null ? "" : queries.replaceAll("\\p{Punct}|\\p{Space}", " ").trim();
+
 		IndexSearcher searcher = getSearcher(indexPath);
 
 		if (searcher == null) {
@@ -173,25 +221,64 @@ public class SearchFiles {
 
 		}
 
-		// Analyzer analyzer = new IKAnalyzer();
-		Analyzer analyzer = new SmartChineseAnalyzer(Version.LUCENE_36);
+		if (queries.length() > 0) {
 
-		QueryParser parser = new QueryParser(Version.LUCENE_36, "value", analyzer);
+			Warmer.record(indexPath, queries, new String[] { "value" }, false, null);
+
+		}
+
+		try {
+
+			return search(searcher, queries, filter, latest, top);
+
+		} finally {
+
+			releaseSearcher(indexPath, searcher);
+
+		}
+
+	}
+
+	/**
+	 * 使用指定的IndexSearcher搜索文件
+	 * 
+	 * @param searcher
+	 *            IndexSearcher
+	 * @param queries
+	 *            关键字，为空时匹配全部文件
+	 * @param filter
+	 *            过滤条件，可以为null
+	 * @param latest
+	 *            是否按修改时间倒序，此时评分为NaN
+	 * @param top
+	 *            最多文件数
+	 * @return SearchResult，或null
+	 */
+	SearchResult search(IndexSearcher searcher, String queries, Filter filter, boolean latest, int top) {
+
+		long start = Metrics.start();
+
+		Metrics.count("search.files.queries");
 
 		Query query = null;
 
 		try {
 
-			query = parser.parse(queries);
+			// 共享的Analyzer，每个线程重用QueryParser
+			query = queries.length() > 0 ? Analyzers.parse(queries, "value") : new MatchAllDocsQuery();
 
 		} catch (ParseException ex) {
 
 			ex.printStackTrace();
 
+			Metrics.count("search.files.errors");
+
 			return null;
 
 		}
 
+		long parsed = Metrics.time("search.files.parse", start);
+
 		// System.out.println("Searching for: " + query.toString());
 
 		top = top < 1 ? topDocs : top;
@@ -200,17 +287,61 @@ public class SearchFiles {
 
 		try {
 
-			topDocs = searcher.search(query, top);
+			topDocs = latest ? searcher.search(query, filter, top, TIME_SORT) : searcher.search(query, filter, top);
+
+		} catch (IOException ex) {
+
+			ex.printStackTrace();
+
+			Metrics.count("search.files.errors");
+
+			return null;
+
+		}
+
+		long searched = Metrics.time("search.files.search", parsed);
+
+		Metrics.record("search.files.hits", topDocs.totalHits);
+
+		try {
+
+			String[] keys = getKeys(searcher, topDocs.scoreDocs);
+
+			Metrics.time("search.files.load", searched);
+
+			float[] scores = new float[topDocs.scoreDocs.length];
+
+			for (int i = 0; i < scores.length; i++) {
+
+				scores[i] = topDocs.scoreDocs[i].score;
+
+			}
+
+			return new SearchResult(keys, scores, topDocs.totalHits, null);
 
 		} catch (IOException ex) {
 
 			ex.printStackTrace();
 
+			Metrics.count("search.files.errors");
+
 			return null;
 
 		}
 
-		ScoreDoc[] docs = topDocs.scoreDocs;
+	}
+
+	/**
+	 * 获取搜索结果的文件路径
+	 * 
+	 * @param searcher
+	 *            IndexSearcher
+	 * @param docs
+	 *            搜索结果
+	 * @return 文件路径数组
+	 * @throws IOException
+	 */
+	public String[] getKeys(IndexSearcher searcher, ScoreDoc[] docs) throws IOException {
 
 		Document doc = null;
 
@@ -226,22 +357,112 @@ public class SearchFiles {
 
 			}
 
+		} finally {
+
+			doc = null;
+
+			docs = null;
+
+		}
+
+		return keyValues;
+
+	}
+
+	/**
+	 * 分页搜索文件，按索引目录，关键字，每页文件数，上一页返回的游标
+	 * 
+	 * @param indexPath
+	 *            索引目录
+	 * @param queries
+	 *            关键字
+	 * @param pageSize
+	 *            每页文件数
+	 * @param cursor
+	 *            上一页返回的游标，第一页为null
+	 * @return SearchResult，游标已经过期(超过SearcherPool.CURSOR_MAX_AGE秒)或参数无效时返回null
+	 */
+	public SearchResult searchPage(File indexPath, String queries, int pageSize, String cursor) {
+
+		if (indexPath == null || queries == null) {
+
+			return null;
+
+		}
+
+		queries = queries.replaceAll("\\p{Punct}|\\p{Space}", " ").trim();
+
+		if (queries.length() == 0) {
+
+			return null;
+
+		}
+
+		Metrics.count("search.files.queries");
+
+		ScoreDoc after = SearchResult.after(cursor);
+
+		IndexSearcher searcher = null;
+
+		// 使用游标对应的IndexSearcher，游标中的文档号只对该IndexSearcher有效，已经过期时返回null，需要从第一页重新搜索
+		if (after != null) {
+
+			searcher = SearcherPool.acquire(indexPath, SearchResult.version(cursor));
+
+			if (searcher == null) {
+
+				Metrics.count("search.cursor.expired");
+
+				return null;
+
+			}
+
+		} else {
+
+			searcher = getSearcher(indexPath);
+
+		}
+
+		if (searcher == null) {
+
+			return null;
+
+		}
+
+		try {
+
+			long version = SearcherPool.record(indexPath, searcher);
+
+			Query query = Analyzers.parse(queries, "value");
+
+			pageSize = pageSize < 1 ? topDocs : pageSize;
+
+			TopDocs docs = searcher.searchAfter(after, query, pageSize);
+
+			return SearchResult.page(version, docs, getKeys(searcher, docs.scoreDocs), pageSize);
+
+		} catch (ParseException ex) {
+
+			ex.printStackTrace();
+
+			Metrics.count("search.files.errors");
+
+			return null;
+
 		} catch (IOException ex) {
 
 			ex.printStackTrace();
 
+			Metrics.count("search.files.errors");
+
 			return null;
 
 		} finally {
 
-			doc = null;
-
-			docs = null;
+			releaseSearcher(indexPath, searcher);
 
 		}
 
-		return keyValues;
-
 	}
 
 	public String[] search(String indexPath, String queries) {
@@ -270,6 +491,20 @@ public class SearchFiles {
 
 	}
 
+	/**
+	 * 释放getSearcher获取的IndexSearcher
+	 * 
+	 * @param indexPath
+	 *            索引目录
+	 * @param searcher
+	 *            IndexSearcher
+	 */
+	public void releaseSearcher(File indexPath, IndexSearcher searcher) {
+
+		SearcherPool.release(indexPath, searcher);
+
+	}
+
 	public void setTopDocs(int topDocs) {
 
 		this.topDocs = topDocs;
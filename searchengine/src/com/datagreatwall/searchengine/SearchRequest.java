@@ -0,0 +1,162 @@
+package com.datagreatwall.searchengine;
+
+import java.io.File;
+
+import org.apache.lucene.search.Filter;
+
+/**
+ * 
+ * 批量搜索中的一个搜索：索引目录，表名，关键字，列名，主键名，是否AND操作，最多返回结果数，统计项，过滤条件
+ * 
+ * @author 石瑜
+ * 
+ */
+public class SearchRequest {
+
+	private File indexBase;
+
+	private String table;
+
+	private String queries;
+
+	private String[] colNames;
+
+	private String keyName;
+
+	private boolean and;
+
+	private int top;
+
+	private Filter[] filters;
+
+	private Facets[] facets;
+
+	/**
+	 * 
+	 * @param indexBase
+	 *            上级索引目录
+	 * @param table
+	 *            表名
+	 * @param queries
+	 *            搜索关键字
+	 * @param colNames
+	 *            列名数组
+	 * @param keyName
+	 *            主键名
+	 * @param and
+	 *            是否全部列都包含关键字(AND操作)
+	 * @param top
+	 *            最多返回结果数，小于1时使用SearchTable.topDocs
+	 * @param filters
+	 *            过滤条件，由Filters生成
+	 */
+	public SearchRequest(File indexBase, String table, String queries, String[] colNames, String keyName, boolean and, int top, Filter... filters) {
+
+		this(indexBase, table, queries, colNames, keyName, and, top, null, filters);
+
+	}
+
+	/**
+	 * 
+	 * @param indexBase
+	 *            上级索引目录
+	 * @param table
+	 *            表名
+	 * @param queries
+	 *            搜索关键字
+	 * @param colNames
+	 *            列名数组
+	 * @param keyName
+	 *            主键名
+	 * @param and
+	 *            是否全部列都包含关键字(AND操作)
+	 * @param top
+	 *            最多返回结果数，小于1时使用SearchTable.topDocs
+	 * @param facets
+	 *            统计项，由Facets生成，可以为null
+	 * @param filters
+	 *            过滤条件，由Filters生成
+	 */
+	public SearchRequest(File indexBase, String table, String queries, String[] colNames, String keyName, boolean and, int top, Facets[] facets, Filter... filters) {
+
+		this.indexBase = indexBase;
+
+		this.table = table;
+
+		this.queries = queries;
+
+		this.colNames = colNames;
+
+		this.keyName = keyName;
+
+		this.and = and;
+
+		this.top = top;
+
+		this.filters = filters;
+
+		this.facets = facets;
+
+	}
+
+	public File getIndexBase() {
+
+		return indexBase;
+
+	}
+
+	public String getTable() {
+
+		return table;
+
+	}
+
+	public String getQueries() {
+
+		return queries;
+
+	}
+
+	public String[] getColNames() {
+
+		return colNames;
+
+	}
+
+	public String getKeyName() {
+
+		return keyName;
+
+	}
+
+	public boolean isAnd() {
+
+		return and;
+
+	}
+
+	public int getTop() {
+
+		return top;
+
+	}
+
+	public Filter[] getFilters() {
+
+		return filters;
+
+	}
+
+	public Facets[] getFacets() {
+
+		return facets;
+
+	}
+
+	public String toString() {
+
+		return new File(indexBase, String.valueOf(table)).getPath() + "\t" + queries;
+
+	}
+
+}
@@ -0,0 +1,222 @@
+package com.datagreatwall.searchengine;
+
+import java.util.Map;
+
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+
+/**
+ * 
+ * 分页搜索结果，包括本页键值及评分，符合条件的总数，以及获取下一页的游标
+ * 
+ * 游标记录本页最后一条结果及IndexReader版本，下一页通过IndexSearcher.searchAfter从该结果之后开始，
+ * 每页只需收集一页的结果；按Facets统计时包括全部符合条件的文档的统计结果
+ * 
+ * @author 石瑜
+ * 
+ */
+public class SearchResult {
+
+	private String[] keys = null;
+
+	private float[] scores = null;
+
+	private int totalHits = 0;
+
+	private String cursor = null;
+
+	private boolean partial = false;
+
+	private Map<String, Map<String, Integer>> facets = null;
+
+	public SearchResult(String[] keys, float[] scores, int totalHits, String cursor) {
+
+		this(keys, scores, totalHits, cursor, false);
+
+	}
+
+	public SearchResult(String[] keys, float[] scores, int totalHits, String cursor, boolean partial) {
+
+		this(keys, scores, totalHits, cursor, partial, null);
+
+	}
+
+	public SearchResult(String[] keys, float[] scores, int totalHits, String cursor, boolean partial, Map<String, Map<String, Integer>> facets) {
+
+		this.keys = keys;
+
+		this.scores = scores;
+
+		this.totalHits = totalHits;
+
+		this.cursor = cursor;
+
+		this.partial = partial;
+
+		this.facets = facets;
+
+	}
+
+	/**
+	 * 本页键值数组
+	 */
+	public String[] getKeys() {
+
+		return keys;
+
+	}
+
+	/**
+	 * 本页评分数组
+	 */
+	public float[] getScores() {
+
+		return scores;
+
+	}
+
+	/**
+	 * 符合条件的总数
+	 */
+	public int getTotalHits() {
+
+		return totalHits;
+
+	}
+
+	/**
+	 * 获取下一页的游标，没有下一页时为null
+	 */
+	public String getCursor() {
+
+		return cursor;
+
+	}
+
+	/**
+	 * 是否因为超时只包括部分结果
+	 */
+	public boolean isPartial() {
+
+		return partial;
+
+	}
+
+	/**
+	 * 统计结果，字段名 -> (值或区间 -> 数量)，没有统计项时为null
+	 */
+	public Map<String, Map<String, Integer>> getFacets() {
+
+		return facets;
+
+	}
+
+	/**
+	 * 生成分页结果，本页已满时返回下一页的游标
+	 * 
+	 * @param version
+	 *            IndexReader版本
+	 * @param docs
+	 *            本页搜索结果
+	 * @param keys
+	 *            本页键值数组
+	 * @param pageSize
+	 *            每页结果数
+	 * @return SearchResult
+	 */
+	static SearchResult page(long version, TopDocs docs, String[] keys, int pageSize) {
+
+		ScoreDoc[] scoreDocs = docs.scoreDocs;
+
+		float[] scores = new float[scoreDocs.length];
+
+		for (int i = 0; i < scoreDocs.length; i++) {
+
+			scores[i] = scoreDocs[i].score;
+
+		}
+
+		String next = null;
+
+		if (scoreDocs.length == pageSize && scoreDocs.length > 0) {
+
+			next = cursor(version, scoreDocs[scoreDocs.length - 1]);
+
+		}
+
+		return new SearchResult(keys, scores, docs.totalHits, next);
+
+	}
+
+	/**
+	 * 生成游标，根据IndexReader版本及本页最后一条结果
+	 * 
+	 * @param version
+	 *            IndexReader版本
+	 * @param last
+	 *            本页最后一条结果
+	 * @return 游标
+	 */
+	static String cursor(long version, ScoreDoc last) {
+
+		return Long.toString(version, 36) + "." + Integer.toString(last.doc, 36) + "." + Integer.toString(Float.floatToIntBits(last.score), 36);
+
+	}
+
+	/**
+	 * 游标对应的IndexReader版本
+	 * 
+	 * @param cursor
+	 *            游标
+	 * @return IndexReader版本，游标无效时返回-1
+	 */
+	static long version(String cursor) {
+
+		try {
+
+			return Long.parseLong(cursor.substring(0, cursor.indexOf('.')), 36);
+
+		} catch (RuntimeException ex) {
+
+			return -1;
+
+		}
+
+	}
+
+	/**
+	 * 游标对应的最后一条结果
+	 * 
+	 * @param cursor
+	 *            游标
+	 * @return ScoreDoc，游标为null或无效时返回null
+	 */
+	static ScoreDoc after(String cursor) {
+
+		if (cursor == null) {
+
+			return null;
+
+		}
+
+		String[] parts = cursor.split("\\.");
+
+		if (parts.length != 3) {
+
+			return null;
+
+		}
+
+		try {
+
+			return new ScoreDoc(Integer.parseInt(parts[1], 36), Float.intBitsToFloat(Integer.parseInt(parts[2], 36)));
+
+		} catch (NumberFormatException ex) {
+
+			return null;
+
+		}
+
+	}
+
+}
@@ -4,23 +4,30 @@ import java.io.File;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.cn.smart.SmartChineseAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.CorruptIndexException;
-import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.queryParser.MultiFieldQueryParser;
 import org.apache.lucene.queryParser.ParseException;
 import org.apache.lucene.queryParser.QueryParser;
 import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.FilteredQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TopDocs;
-import org.apache.lucene.store.FSDirectory;
-import org.apache.lucene.util.Version;
 
 import com.datagreatwall.database.Database;
 
@@ -36,107 +43,1091 @@ public class SearchTable {
 	// 搜索结果最多返回记录数默认值
 	public int topDocs = 20;
 
-	// 因为IndexSearcher不需要同步，所以可以使用HashMap，不必使用Hashtable
-	public static HashMap<String, IndexSearcher> SEARCHER = new HashMap<String, IndexSearcher>();
+	// 是否从FieldCache获取搜索结果的主键，不读取存储的文档，需要额外内存保存每个段的主键数组
+	public boolean keyCache = false;
+
+	// 每次搜索的时间限制(毫秒)，超时返回已经收集的部分结果，小于1时不限制
+	public long timeout = 0;
+
+	// 是否按文档号顺序收集并在收集到足够的结果后不再评分其余文档，返回任意符合条件的结果，不按评分也不保证按主键排序
+	public boolean indexOrder = false;
+
+	// 搜索结果缓存的初始最大字节数，通过系统属性searchengine.cache.bytes配置，小于1时不缓存，运行时使用CACHE.setMaxBytes修改
+	public static final long CACHE_BYTES = Long.getLong("searchengine.cache.bytes", 64L * 1024 * 1024);
+
+	// 搜索结果缓存，所有SearchTable共用
+	public static final ResultCache CACHE = new ResultCache(CACHE_BYTES);
+
+	private static final Filter[] NO_FILTERS = new Filter[0];
+
+	public static int BATCH_THREADS = Runtime.getRuntime().availableProcessors(); // 批量搜索的线程数，所有SearchTable共用
+
+	public static int BATCH_QUEUE_SIZE = 1000; // 批量搜索等待执行的最大数量，已满时由调用线程执行
+
+	public static int SHARD_THREADS = Runtime.getRuntime().availableProcessors(); // 并行搜索分片的线程数，所有SearchTable共用
+
+	private static ThreadPoolExecutor batchExecutor = null;
+
+	private static ThreadPoolExecutor shardExecutor = null;
 
 	public static void main(String[] args) throws Exception {
 
-		for (int i = 0; i < 10; i++) {
+		for (int i = 0; i < 10; i++) {
+
+			SearchTable searchTable = new SearchTable();
+
+			searchTable.test();
+
+			System.out.println();
+
+		}
+
+		System.out.println("cache:\t" + CACHE);
+
+	}
+
+	public SearchTable() {
+
+	}
+
+	/**
+	 * 获取索引目录对应的IndexSearcher，使用完毕后必须调用releaseSearcher
+	 * 
+	 * @param indexPath
+	 *            索引目录
+	 * @return IndexSearcher，或null
+	 */
+	public IndexSearcher getSearcher(File indexPath) {
+
+		return SearcherPool.acquire(indexPath);
+
+	}
+
+	public boolean isKeyCache() {
+
+		return keyCache;
+
+	}
+
+	public int getTopDocs() {
+
+		return topDocs;
+
+	}
+
+	public long getTimeout() {
+
+		return timeout;
+
+	}
+
+	public boolean isIndexOrder() {
+
+		return indexOrder;
+
+	}
+
+	public String[] search(File indexBase, String table, String queries, String[] colNames, String keyName) throws IOException, ParseException {
+
+		return search(indexBase, table, queries, colNames, keyName, false);
+
+	}
+
+	public String[] search(File indexBase, String table, String queries, String[] colNames, String keyName, boolean and) throws IOException, ParseException {
+
+		return search(indexBase, table, queries, colNames, keyName, and, topDocs);
+
+	}
+
+	/**
+	 * 搜索表，按指定的上级索引目录，表名，搜索关键字，列名数组，主键名，是否全部列都包含关键字(AND操作)，最多返回结果数
+	 * 
+	 * @param indexBase
+	 *            上级索引目录
+	 * @param table
+	 *            表名
+	 * @param queries
+	 *            搜索关键字
+	 * @param colNames
+	 *            列名数组
+	 * @param keyName
+	 *            主键名
+	 * @param and
+	 *            是否全部列都包含关键字(AND操作)
+	 * @param top
+	 *            最多返回结果数
+	 * @return 键值数组，或null
+	 * @throws IOException
+	 * @throws ParseException
+	 */
+	public String[] search(File indexBase, String table, String queries, String[] colNames, String keyName, boolean and, int top) {
+
+		SearchResult result = searchResult(indexBase, table, queries, colNames, keyName, and, top);
+
+		return result == null ? null : result.getKeys();
+
+	}
+
+	/**
+	 * 搜索表，与search相同，返回键值、评分、命中数，以及是否因为超时只包括部分结果；部分结果不缓存，
+	 * 来自缓存的结果评分为null，命中数为-1
+	 * 
+	 * @param indexBase
+	 *            上级索引目录
+	 * @param table
+	 *            表名
+	 * @param queries
+	 *            搜索关键字
+	 * @param colNames
+	 *            列名数组
+	 * @param keyName
+	 *            主键名
+	 * @param and
+	 *            是否全部列都包含关键字(AND操作)
+	 * @param top
+	 *            最多返回结果数
+	 * @return SearchResult，或null
+	 */
+	public SearchResult searchResult(File indexBase, String table, String queries, String[] colNames, String keyName, boolean and, int top) {
+
+		return searchResult(indexBase, table, queries, colNames, keyName, and, top, NO_FILTERS);
+
+	}
+
+	/**
+	 * 按过滤条件搜索表，只返回同时符合全部过滤条件的结果，过滤条件由Filters生成，
+	 * 每个段的匹配文档位集缓存在CachingWrapperFilter中，多次搜索重复使用
+	 * 
+	 * @param indexBase
+	 *            上级索引目录
+	 * @param table
+	 *            表名
+	 * @param queries
+	 *            搜索关键字
+	 * @param colNames
+	 *            列名数组
+	 * @param keyName
+	 *            主键名
+	 * @param and
+	 *            是否全部列都包含关键字(AND操作)
+	 * @param top
+	 *            最多返回结果数
+	 * @param filters
+	 *            过滤条件，如Filters.term("category", "3")、Filters.range("price", 100L, 500L)
+	 * @return SearchResult，或null
+	 */
+	public SearchResult searchResult(File indexBase, String table, String queries, String[] colNames, String keyName, boolean and, int top, Filter... filters) {
+
+		return searchResult(indexBase, table, queries, colNames, keyName, and, top, null, filters);
+
+	}
+
+	/**
+	 * 按过滤条件搜索表，同时统计全部符合条件的文档，如分类及价格区间的数量，统计与收集前top条结果在同一次遍历中完成，
+	 * 结果由SearchResult.getFacets返回；有统计项时不使用结果缓存
+	 * 
+	 * @param indexBase
+	 *            上级索引目录
+	 * @param table
+	 *            表名
+	 * @param queries
+	 *            搜索关键字
+	 * @param colNames
+	 *            列名数组
+	 * @param keyName
+	 *            主键名
+	 * @param and
+	 *            是否全部列都包含关键字(AND操作)
+	 * @param top
+	 *            最多返回结果数
+	 * @param facets
+	 *            统计项，如Facets.values("category")、Facets.ranges("price", 0, 100, 500, Long.MAX_VALUE)，可以为null
+	 * @param filters
+	 *            过滤条件，由Filters生成
+	 * @return SearchResult，或null
+	 */
+	public SearchResult searchResult(File indexBase, String table, String queries, String[] colNames, String keyName, boolean and, int top, Facets[] facets, Filter... filters) {
+
+		if (indexBase == null || table == null || table.length() == 0 || queries == null || queries.length() == 0 || colNames == null || colNames.length == 0 || keyName == null || keyName.length() == 0) {
+
+			return null;
+
+		}
+
+		table = table.trim();
+
+		queries = queries.replaceAll("\\p{Punct}|\\p{Space}", " ").trim();
+
+		keyName = keyName.trim();
+
+		if (table.length() == 0 || queries.length() == 0 || keyName.length() == 0) {
+
+			return null;
+
+		}
+
+		if (Shards.isSharded(table)) {
+
+			return searchShards(indexBase, table, queries, colNames, keyName, and, top, filters, facets);
+
+		}
+
+		File indexPath = new File(indexBase, table);
+
+		// 慢查询日志，记录各阶段耗时
+		SlowQueryLog.Trace trace = SlowQueryLog.begin();
+
+		IndexSearcher searcher = getSearcher(indexPath);
+
+		if (searcher == null) {
+
+			return null;
+
+		}
+
+		if (trace != null) {
+
+			trace.acquire = System.nanoTime() - trace.start;
+
+		}
+
+		try {
+
+			return cachedSearch(searcher, indexPath, queries, colNames, keyName, and, top, filters, facets, trace);
+
+		} finally {
+
+			releaseSearcher(indexPath, searcher);
+
+			SlowQueryLog.end(trace, indexPath, queries, colNames, and);
+
+		}
+
+	}
+
+	/**
+	 * 批量搜索，同一索引目录的IndexSearcher只获取一次，各个搜索在共用的线程池中并行执行，全部完成后返回
+	 * 
+	 * @param requests
+	 *            SearchRequest数组，可以是相同或不同的表
+	 * @return SearchResult数组，与requests顺序相同，参数无效或搜索失败的为null
+	 */
+	public SearchResult[] search(SearchRequest[] requests) {
+
+		SearchResult[] results = new SearchResult[requests.length];
+
+		List<Future<SearchResult>> futures = new ArrayList<Future<SearchResult>>(requests.length);
+
+		for (int i = 0; i < requests.length; i++) {
+
+			futures.add(null);
+
+		}
+
+		Map<File, IndexSearcher> searchers = new HashMap<File, IndexSearcher>();
+
+		ThreadPoolExecutor executor = batchExecutor();
+
+		try {
+
+			for (int i = 0; i < requests.length; i++) {
+
+				SearchRequest request = requests[i];
+
+				if (request == null || request.getIndexBase() == null || request.getTable() == null || request.getQueries() == null || request.getColNames() == null || request.getColNames().length == 0 || request.getKeyName() == null) {
+
+					continue;
+
+				}
+
+				final String table = request.getTable().trim();
+
+				final String queries = request.getQueries().replaceAll("\\p{Punct}|\\p{Space}", " ").trim();
+
+				final String keyName = request.getKeyName().trim();
+
+				if (table.length() == 0 || queries.length() == 0 || keyName.length() == 0) {
+
+					continue;
+
+				}
+
+				final String[] colNames = request.getColNames();
+
+				final boolean and = request.isAnd();
+
+				final int top = request.getTop();
+
+				final Filter[] filters = request.getFilters();
+
+				final Facets[] facets = request.getFacets();
+
+				if (Shards.isSharded(table)) {
+
+					final File indexBase = request.getIndexBase();
+
+					futures.set(i, executor.submit(new Callable<SearchResult>() {
+
+						public SearchResult call() {
+
+							return searchShards(indexBase, table, queries, colNames, keyName, and, top, filters, facets);
+
+						}
+
+					}));
+
+					continue;
+
+				}
+
+				final File indexPath = new File(request.getIndexBase(), table);
+
+				long start = System.nanoTime();
+
+				if (!searchers.containsKey(indexPath)) {
+
+					searchers.put(indexPath, getSearcher(indexPath));
+
+				}
+
+				final long acquire = System.nanoTime() - start;
+
+				final IndexSearcher searcher = searchers.get(indexPath);
+
+				if (searcher == null) {
+
+					continue;
+
+				}
+
+				futures.set(i, executor.submit(new Callable<SearchResult>() {
+
+					public SearchResult call() {
+
+						SlowQueryLog.Trace trace = SlowQueryLog.begin();
+
+						if (trace != null) {
+
+							trace.acquire = acquire;
+
+						}
+
+						try {
+
+							return cachedSearch(searcher, indexPath, queries, colNames, keyName, and, top, filters, facets, trace);
+
+						} finally {
+
+							SlowQueryLog.end(trace, indexPath, queries, colNames, and);
+
+						}
+
+					}
+
+				}));
+
+			}
+
+			Metrics.count("search.table.batches");
+
+			Metrics.record("search.table.batch.size", requests.length);
+
+			for (int i = 0; i < futures.size(); i++) {
+
+				if (futures.get(i) != null) {
+
+					results[i] = await(futures.get(i));
+
+				}
+
+			}
+
+		} finally {
+
+			for (Map.Entry<File, IndexSearcher> entry : searchers.entrySet()) {
+
+				if (entry.getValue() != null) {
+
+					releaseSearcher(entry.getKey(), entry.getValue());
+
+				}
+
+			}
+
+		}
+
+		return results;
+
+	}
+
+	/**
+	 * 搜索分片的表，各个分片在线程池中并行搜索，按评分(TopDocs.merge)合并前top条结果；
+	 * 按索引顺序返回时按分片顺序依次取各分片的结果，不保证主键顺序；统计结果为各分片之和
+	 * 
+	 * @param queries
+	 *            规范化的关键字
+	 * @return SearchResult，或null
+	 */
+	SearchResult searchShards(File indexBase, String table, final String queries, final String[] colNames, final String keyName, final boolean and, int top, final Filter[] filters, final Facets[] facets) {
+
+		final int n = top < 1 ? topDocs : top;
+
+		File[] paths = Shards.paths(indexBase, table);
+
+		File indexPath = new File(indexBase, table);
+
+		final IndexSearcher[] searchers = new IndexSearcher[paths.length];
+
+		SlowQueryLog.Trace trace = SlowQueryLog.begin();
+
+		try {
+
+			// 各分片版本都只增不减，版本之和改变时缓存的结果失效
+			long version = 0;
+
+			for (int i = 0; i < paths.length; i++) {
+
+				searchers[i] = getSearcher(paths[i]);
+
+				if (searchers[i] == null) {
+
+					return null;
+
+				}
+
+				version += searchers[i].getIndexReader().getVersion();
+
+			}
+
+			if (trace != null) {
+
+				trace.acquire = System.nanoTime() - trace.start;
+
+			}
+
+			String cacheKey = cacheKey(indexPath, queries, colNames, keyName, and, n, indexOrder, filters);
+
+			boolean cache = facets == null || facets.length == 0;
+
+			String[] keyValues = cache ? CACHE.get(cacheKey, version) : null;
+
+			Metrics.count("search.table.queries");
+
+			Warmer.record(indexPath, queries, colNames, and, keyCache ? keyName : null);
+
+			if (trace != null) {
+
+				trace.cache = System.nanoTime() - trace.start - trace.acquire;
+
+			}
+
+			if (keyValues != null) {
+
+				Metrics.count("search.table.cache.hits");
+
+				if (trace != null) {
+
+					trace.cached = true;
+
+				}
+
+				return new SearchResult(keyValues, null, -1, null);
+
+			}
+
+			List<Future<SearchResult>> futures = new ArrayList<Future<SearchResult>>(searchers.length);
+
+			ThreadPoolExecutor executor = shardExecutor();
+
+			for (int i = 0; i < searchers.length; i++) {
+
+				final IndexSearcher searcher = searchers[i];
+
+				futures.add(executor.submit(new Callable<SearchResult>() {
+
+					public SearchResult call() {
+
+						return searchResult(searcher, queries, colNames, keyName, and, n, filters, facets, null);
+
+					}
+
+				}));
+
+			}
+
+			SearchResult[] results = new SearchResult[futures.size()];
+
+			for (int i = 0; i < futures.size(); i++) {
+
+				results[i] = await(futures.get(i));
+
+			}
+
+			long start = trace != null ? System.nanoTime() : 0;
+
+			SearchResult result = merge(results, n, facets);
+
+			if (trace != null) {
+
+				trace.search = System.nanoTime() - start;
+
+				trace.hits = result != null ? result.getTotalHits() : 0;
+
+			}
+
+			if (cache && result != null && !result.isPartial()) {
+
+				CACHE.put(cacheKey, version, result.getKeys());
+
+			}
+
+			return result;
+
+		} finally {
+
+			for (int i = 0; i < searchers.length; i++) {
+
+				if (searchers[i] != null) {
+
+					releaseSearcher(paths[i], searchers[i]);
+
+				}
+
+			}
+
+			SlowQueryLog.end(trace, indexPath, queries, colNames, and);
+
+		}
+
+	}
+
+	/**
+	 * 合并各分片的搜索结果，任一分片失败时返回null，任一分片超时时结果为部分结果
+	 */
+	private SearchResult merge(SearchResult[] results, int top, Facets[] facets) {
+
+		TopDocs[] shardHits = new TopDocs[results.length];
+
+		int totalHits = 0;
+
+		boolean partial = false;
+
+		for (int i = 0; i < results.length; i++) {
+
+			if (results[i] == null) {
+
+				return null;
+
+			}
+
+			String[] keys = results[i].getKeys();
+
+			float[] scores = results[i].getScores();
+
+			// 分片内的结果序号作为文档号，合并后按shardIndex和文档号取键值
+			ScoreDoc[] docs = new ScoreDoc[keys.length];
+
+			for (int j = 0; j < docs.length; j++) {
+
+				docs[j] = new ScoreDoc(j, scores[j]);
+
+			}
+
+			shardHits[i] = new TopDocs(results[i].getTotalHits(), docs, docs.length > 0 ? docs[0].score : Float.NaN);
+
+			totalHits += results[i].getTotalHits();
+
+			partial |= results[i].isPartial();
+
+		}
+
+		ArrayList<ScoreDoc> merged = new ArrayList<ScoreDoc>(top);
+
+		if (indexOrder) {
+
+			for (int i = 0; i < shardHits.length && merged.size() < top; i++) {
+
+				for (int j = 0; j < shardHits[i].scoreDocs.length && merged.size() < top; j++) {
+
+					shardHits[i].scoreDocs[j].shardIndex = i;
+
+					merged.add(shardHits[i].scoreDocs[j]);
+
+				}
+
+			}
+
+		} else {
+
+			try {
+
+				merged.addAll(Arrays.asList(TopDocs.merge(null, top, shardHits).scoreDocs));
+
+			} catch (IOException ex) {
+
+				ex.printStackTrace();
+
+				return null;
+
+			}
+
+		}
+
+		String[] keyValues = new String[merged.size()];
+
+		float[] scores = new float[merged.size()];
+
+		for (int i = 0; i < keyValues.length; i++) {
+
+			ScoreDoc doc = merged.get(i);
+
+			keyValues[i] = results[doc.shardIndex].getKeys()[doc.doc];
+
+			scores[i] = doc.score;
+
+		}
+
+		return new SearchResult(keyValues, scores, totalHits, null, partial, facets == null || facets.length == 0 ? null : Facets.merge(facets, results));
+
+	}
+
+	/**
+	 * 等待执行结果，被中断时继续等待(全部完成后才能释放IndexSearcher)，返回前恢复中断状态
+	 * 
+	 * @return 执行结果，失败时返回null
+	 */
+	private static <T> T await(Future<T> future) {
+
+		boolean interrupted = false;
+
+		try {
+
+			while (true) {
+
+				try {
+
+					return future.get();
+
+				} catch (InterruptedException ex) {
+
+					interrupted = true;
+
+				} catch (ExecutionException ex) {
+
+					Metrics.count("search.table.errors");
+
+					ex.getCause().printStackTrace();
+
+					return null;
+
+				}
+
+			}
+
+		} finally {
+
+			if (interrupted) {
+
+				Thread.currentThread().interrupt();
+
+			}
+
+		}
+
+	}
+
+	/**
+	 * 批量搜索的线程池
+	 */
+	private static synchronized ThreadPoolExecutor batchExecutor() {
+
+		if (batchExecutor == null) {
+
+			batchExecutor = newExecutor("search-batch-", BATCH_THREADS, BATCH_QUEUE_SIZE);
+
+		}
+
+		return batchExecutor;
+
+	}
+
+	/**
+	 * 搜索分片的线程池，与批量搜索分开，批量搜索的线程等待分片搜索时不会占满同一个线程池
+	 */
+	private static synchronized ThreadPoolExecutor shardExecutor() {
+
+		if (shardExecutor == null) {
+
+			shardExecutor = newExecutor("search-shard-", SHARD_THREADS, BATCH_QUEUE_SIZE);
+
+		}
+
+		return shardExecutor;
+
+	}
+
+	/**
+	 * 创建线程池，线程空闲60秒后结束，队列已满时由调用线程执行
+	 */
+	private static ThreadPoolExecutor newExecutor(final String name, int threads, int queueSize) {
+
+		threads = Math.max(1, threads);
+
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(Math.max(1, queueSize)), new ThreadFactory() {
+
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(Runnable r) {
+
+				Thread t = new Thread(r, name + count.incrementAndGet());
+
+				t.setDaemon(true);
+
+				return t;
+
+			}
+
+		}, new ThreadPoolExecutor.CallerRunsPolicy());
+
+		executor.allowCoreThreadTimeOut(true);
+
+		return executor;
+
+	}
+
+	/**
+	 * 使用已经获取的IndexSearcher搜索，先查结果缓存，未超时的结果放入缓存，有统计项时不使用缓存
+	 * 
+	 * @param queries
+	 *            规范化的关键字
+	 * @return SearchResult，或null
+	 */
+	SearchResult cachedSearch(IndexSearcher searcher, File indexPath, String queries, String[] colNames, String keyName, boolean and, int top, Filter[] filters, Facets[] facets, SlowQueryLog.Trace trace) {
+
+		top = top < 1 ? topDocs : top;
+
+		// 索引重新打开后IndexReader版本改变，缓存的结果自动失效
+		long version = searcher.getIndexReader().getVersion();
+
+		String cacheKey = cacheKey(indexPath, queries, colNames, keyName, and, top, indexOrder, filters);
+
+		boolean cache = facets == null || facets.length == 0;
+
+		String[] keyValues = cache ? CACHE.get(cacheKey, version) : null;
+
+		Metrics.count("search.table.queries");
+
+		// 重新打开索引时重放最近的查询
+		Warmer.record(indexPath, queries, colNames, and, keyCache ? keyName : null);
+
+		if (trace != null) {
+
+			trace.cache = System.nanoTime() - trace.start - trace.acquire;
+
+		}
+
+		if (keyValues != null) {
+
+			Metrics.count("search.table.cache.hits");
+
+			if (trace != null) {
+
+				trace.cached = true;
+
+			}
+
+			return new SearchResult(keyValues, null, -1, null);
+
+		}
+
+		SearchResult result = searchResult(searcher, queries, colNames, keyName, and, top, filters, facets, trace);
+
+		if (cache && result != null && !result.isPartial()) {
+
+			CACHE.put(cacheKey, version, result.getKeys());
+
+		}
+
+		return result;
+
+	}
+
+	/**
+	 * 生成结果缓存键，按索引目录，规范化的关键字，排序后的列名，主键名，是否AND操作，最多返回结果数，是否按索引顺序，
+	 * 过滤条件(Filters生成的按条件，其他的按对象)
+	 */
+	static String cacheKey(File indexPath, String queries, String[] colNames, String keyName, boolean and, int top, boolean indexOrder, Filter[] filters) {
+
+		String[] cols = new String[colNames.length];
+
+		for (int i = 0; i < cols.length; i++) {
+
+			cols[i] = colNames[i] == null ? "" : colNames[i].toLowerCase();
+
+		}
+
+		Arrays.sort(cols);
+
+		StringBuilder sb = new StringBuilder(indexPath.getAbsolutePath());
+
+		sb.append('\u0001').append(queries.replaceAll("\\s+", " ").toLowerCase());
+
+		sb.append('\u0001').append(Arrays.toString(cols));
+
+		sb.append('\u0001').append(keyName.toLowerCase());
+
+		sb.append('\u0001').append(and);
+
+		sb.append('\u0001').append(top);
+
+		sb.append('\u0001').append(indexOrder);
+
+		for (int i = 0; filters != null && i < filters.length; i++) {
+
+			sb.append('\u0001').append(filters[i]);
+
+		}
+
+		return sb.toString();
+
+	}
+
+	/**
+	 * 使用指定的IndexSearcher搜索，按搜索关键字，列名数组，主键名，是否全部列都包含关键字(AND操作)，最多返回结果数
+	 * 
+	 * @param searcher
+	 *            IndexSearcher
+	 * @param queries
+	 *            搜索关键字
+	 * @param colNames
+	 *            列名数组
+	 * @param keyName
+	 *            主键名
+	 * @param and
+	 *            是否全部列都包含关键字(AND操作)
+	 * @param top
+	 *            最多返回结果数
+	 * @return 键值数组，或null
+	 */
+	public String[] search(IndexSearcher searcher, String queries, String[] colNames, String keyName, boolean and, int top) {
+
+		SearchResult result = searchResult(searcher, queries, colNames, keyName, and, top, NO_FILTERS, null, null);
 
-			SearchTable searchTable = new SearchTable();
+		return result == null ? null : result.getKeys();
 
-			searchTable.test();
+	}
 
-			System.out.println();
+	/**
+	 * 使用指定的IndexSearcher搜索，timeout大于0时限制搜索时间，trace不为null时记录解析、搜索及读取键值的耗时，
+	 * facets不为空时同时统计全部符合条件的文档
+	 */
+	SearchResult searchResult(IndexSearcher searcher, String queries, String[] colNames, String keyName, boolean and, int top, Filter[] filters, Facets[] facets, SlowQueryLog.Trace trace) {
+
+		long start = trace != null ? System.nanoTime() : Metrics.start();
+
+		Query query = query(queries, colNames, and);
+
+		if (query == null) {
+
+			Metrics.count("search.table.errors");
+
+			return null;
 
 		}
 
-	}
+		// 过滤条件与评分的文档交替跳转(leapfrog)，只评分同时符合过滤条件的文档
+		for (int i = 0; filters != null && i < filters.length; i++) {
 
-	public SearchTable() {
+			if (filters[i] != null) {
 
-	}
+				query = new FilteredQuery(query, filters[i]);
 
-	public IndexSearcher getSearcher(File indexPath) {
+			}
+
+		}
 
-		if (indexPath == null) {
+		long parsed = start == 0 ? 0 : System.nanoTime();
 
-			return null;
+		if (trace != null) {
+
+			trace.parse = parsed - start;
 
 		}
 
-		String path = indexPath.getAbsolutePath();
+		Metrics.time("search.table.parse", start);
 
-		IndexSearcher searcher = SEARCHER.get(path);
+		// System.out.println("Searching for: " + query.toString());
 
-		// 索引目录对应的IndexSearcher已经存在
-		if (searcher != null) {
+		top = top < 1 ? topDocs : top;
 
-			try {
+		LimitedSearch.Result topDocs = null;
 
-				IndexReader reader = searcher.getIndexReader();
+		Facets.Counter counter = facets == null || facets.length == 0 ? null : new Facets.Counter(facets);
 
-				if (!reader.isCurrent()) { // IndexReader已经改变
+		try {
 
-					reader = IndexReader.openIfChanged(reader);
+			topDocs = LimitedSearch.search(searcher, query, top, timeout, indexOrder, counter);
 
-					searcher = new IndexSearcher(reader);
+		} catch (IOException ex) {
 
-					SEARCHER.put(path, searcher);
+			ex.printStackTrace();
 
-				}
+			Metrics.count("search.table.errors");
 
-				return searcher;
+			topDocs = null;
 
-			} catch (IOException ex) {
+			return null;
 
-				ex.printStackTrace();
+		}
 
-			}
+		long searched = start == 0 ? 0 : System.nanoTime();
+
+		if (trace != null) {
+
+			trace.search = searched - parsed;
+
+			trace.hits = topDocs.totalHits;
 
 		}
 
-		// 新建 IndexReader
+		Metrics.time("search.table.search", parsed);
+
+		Metrics.record("search.table.hits", topDocs.totalHits);
+
 		try {
 
-			IndexReader reader = IndexReader.open(FSDirectory.open(indexPath));
+			String[] keyValues = getKeys(searcher, topDocs.scoreDocs, keyName);
+
+			if (trace != null) {
+
+				trace.load = System.nanoTime() - searched;
+
+			}
+
+			Metrics.time("search.table.load", searched);
 
-			searcher = new IndexSearcher(reader);
+			float[] scores = new float[topDocs.scoreDocs.length];
 
-			SEARCHER.put(path, searcher);
+			for (int i = 0; i < scores.length; i++) {
+
+				scores[i] = topDocs.scoreDocs[i].score;
+
+			}
+
+			return new SearchResult(keyValues, scores, topDocs.totalHits, null, topDocs.isPartial(), counter == null ? null : counter.getCounts());
 
 		} catch (IOException ex) {
 
 			ex.printStackTrace();
 
+			Metrics.count("search.table.errors");
+
 			return null;
 
 		}
 
-		return searcher;
-
 	}
 
-	public int getTopDocs() {
+	/**
+	 * 解析搜索关键字，按列名数组，是否全部列都包含关键字(AND操作)
+	 * 
+	 * @param queries
+	 *            搜索关键字
+	 * @param colNames
+	 *            列名数组
+	 * @param and
+	 *            是否全部列都包含关键字(AND操作)
+	 * @return Query，或null
+	 */
+	public Query query(String queries, String[] colNames, boolean and) {
 
-		return topDocs;
+		Occur[] clauses = new Occur[colNames.length];
 
-	}
+		for (int i = 0; i < clauses.length; i++) {
 
-	public String[] search(File indexBase, String table, String queries, String[] colNames, String keyName) throws IOException, ParseException {
+			if (and) {
 
-		return search(indexBase, table, queries, colNames, keyName, false);
+				clauses[i] = Occur.MUST;
+
+			} else {
+
+				clauses[i] = Occur.SHOULD;
+
+			}
+
+			colNames[i] = colNames[i].toLowerCase();
+
+		}
+
+		try {
+
+			// 共享的Analyzer，每个线程重用QueryParser
+			return Analyzers.parse(QueryParser.escape(queries), colNames, clauses);
+
+		} catch (ParseException ex) {
+
+			ex.printStackTrace();
+
+			return null;
+
+		} finally {
+
+			clauses = null;
+
+		}
 
 	}
 
-	public String[] search(File indexBase, String table, String queries, String[] colNames, String keyName, boolean and) throws IOException, ParseException {
+	/**
+	 * 获取搜索结果的键值，keyCache为true时从FieldCache获取，否则读取存储的文档
+	 * 
+	 * @param searcher
+	 *            IndexSearcher
+	 * @param docs
+	 *            搜索结果
+	 * @param keyName
+	 *            主键名
+	 * @return 键值数组
+	 * @throws IOException
+	 */
+	public String[] getKeys(IndexSearcher searcher, ScoreDoc[] docs, String keyName) throws IOException {
 
-		return search(indexBase, table, queries, colNames, keyName, and, topDocs);
+		keyName = keyName.toLowerCase();
+
+		if (keyCache) {
+
+			return KeyCache.getKeys(searcher, docs, keyName);
+
+		}
+
+		Document doc = null;
+
+		String[] keyValues = new String[docs.length];
+
+		try {
+
+			for (int i = 0; i < docs.length; i++) {
+
+				doc = searcher.doc(docs[i].doc);
+
+				keyValues[i] = doc.get(keyName);
+
+			}
+
+		} finally {
+
+			doc = null;
+
+			docs = null;
+
+		}
+
+		return keyValues;
 
 	}
 
 	/**
-	 * 搜索表，按指定的上级索引目录，表名，搜索关键字，列名数组，主键名，是否全部列都包含关键字(AND操作)，最多返回结果数
+	 * 分页搜索表，按上级索引目录，表名，搜索关键字，列名数组，主键名，是否全部列都包含关键字(AND操作)，每页结果数，上一页返回的游标
 	 * 
 	 * @param indexBase
 	 *            上级索引目录
@@ -150,13 +1141,13 @@ public class SearchTable {
 	 *            主键名
 	 * @param and
 	 *            是否全部列都包含关键字(AND操作)
-	 * @param top
-	 *            最多返回结果数
-	 * @return 键值数组，或null
-	 * @throws IOException
-	 * @throws ParseException
+	 * @param pageSize
+	 *            每页结果数
+	 * @param cursor
+	 *            上一页返回的游标，第一页为null
+	 * @return SearchResult，游标已经过期(超过SearcherPool.CURSOR_MAX_AGE秒)或参数无效时返回null
 	 */
-	public String[] search(File indexBase, String table, String queries, String[] colNames, String keyName, boolean and, int top) {
+	public SearchResult searchPage(File indexBase, String table, String queries, String[] colNames, String keyName, boolean and, int pageSize, String cursor) {
 
 		if (indexBase == null || table == null || table.length() == 0 || queries == null || queries.length() == 0 || colNames == null || colNames.length == 0 || keyName == null || keyName.length() == 0) {
 
@@ -176,110 +1167,157 @@ public class SearchTable {
 
 		}
 
+		Metrics.count("search.table.queries");
+
 		File indexPath = new File(indexBase, table);
 
-		IndexSearcher searcher = getSearcher(indexPath);
+		ScoreDoc after = SearchResult.after(cursor);
 
-		if (searcher == null) {
+		IndexSearcher searcher = null;
 
-			return null;
+		// 使用游标对应的IndexSearcher，游标中的文档号只对该IndexSearcher有效，已经过期时返回null，需要从第一页重新搜索
+		if (after != null) {
 
-		}
+			searcher = SearcherPool.acquire(indexPath, SearchResult.version(cursor));
 
-		// Analyzer analyzer = new IKAnalyzer();
-		Analyzer analyzer = new SmartChineseAnalyzer(Version.LUCENE_36);
+			if (searcher == null) {
 
-		Occur[] clauses = new Occur[colNames.length];
+				Metrics.count("search.cursor.expired");
 
-		for (int i = 0; i < clauses.length; i++) {
+				return null;
 
-			if (and) {
+			}
 
-				clauses[i] = Occur.MUST;
+		} else {
 
-			} else {
+			searcher = getSearcher(indexPath);
 
-				clauses[i] = Occur.SHOULD;
+		}
 
-			}
+		if (searcher == null) {
 
-			colNames[i] = colNames[i].toLowerCase();
+			return null;
 
 		}
 
-		Query query = null;
-
 		try {
 
-			query = MultiFieldQueryParser.parse(Version.LUCENE_36, QueryParser.escape(queries), colNames, clauses, analyzer);
+			long version = SearcherPool.record(indexPath, searcher);
 
-		} catch (ParseException ex) {
+			Query query = query(queries, colNames, and);
+
+			if (query == null) {
+
+				return null;
+
+			}
+
+			pageSize = pageSize < 1 ? topDocs : pageSize;
+
+			TopDocs docs = searcher.searchAfter(after, query, pageSize);
+
+			return SearchResult.page(version, docs, getKeys(searcher, docs.scoreDocs, keyName), pageSize);
+
+		} catch (IOException ex) {
 
 			ex.printStackTrace();
 
-			query = null;
+			Metrics.count("search.table.errors");
 
 			return null;
 
 		} finally {
 
-			clauses = null;
+			releaseSearcher(indexPath, searcher);
 
 		}
 
-		// System.out.println("Searching for: " + query.toString());
+	}
 
-		top = top < 1 ? topDocs : top;
+	/**
+	 * 搜索表，返回数字主键，主键从FieldCache的long数组获取，不读取存储的文档
+	 * 
+	 * @param indexBase
+	 *            上级索引目录
+	 * @param table
+	 *            表名
+	 * @param queries
+	 *            搜索关键字
+	 * @param colNames
+	 *            列名数组
+	 * @param keyName
+	 *            主键名
+	 * @param and
+	 *            是否全部列都包含关键字(AND操作)
+	 * @param top
+	 *            最多返回结果数
+	 * @return 键值数组，或null
+	 */
+	public long[] searchLongKeys(File indexBase, String table, String queries, String[] colNames, String keyName, boolean and, int top) {
 
-		TopDocs topDocs = null;
+		if (indexBase == null || table == null || table.length() == 0 || queries == null || queries.length() == 0 || colNames == null || colNames.length == 0 || keyName == null || keyName.length() == 0) {
 
-		try {
+			return null;
 
-			topDocs = searcher.search(query, top);
+		}
 
-		} catch (IOException ex) {
+		table = table.trim();
 
-			ex.printStackTrace();
+		queries = queries.replaceAll("\\p{Punct}|\\p{Space}", " ").trim();
 
-			topDocs = null;
+		keyName = keyName.trim();
+
+		if (table.length() == 0 || queries.length() == 0 || keyName.length() == 0) {
 
 			return null;
 
 		}
 
-		ScoreDoc[] docs = topDocs.scoreDocs;
+		Metrics.count("search.table.queries");
 
-		Document doc = null;
+		File indexPath = new File(indexBase, table);
 
-		String[] keyValues = new String[docs.length];
+		IndexSearcher searcher = getSearcher(indexPath);
 
-		keyName = keyName.toLowerCase();
+		if (searcher == null) {
+
+			return null;
+
+		}
 
 		try {
 
-			for (int i = 0; i < docs.length; i++) {
+			Query query = query(queries, colNames, and);
 
-				doc = searcher.doc(docs[i].doc);
+			if (query == null) {
 
-				keyValues[i] = doc.get(keyName);
+				return null;
 
 			}
 
+			TopDocs docs = LimitedSearch.search(searcher, query, top < 1 ? topDocs : top, timeout, indexOrder);
+
+			return KeyCache.getLongKeys(searcher, docs.scoreDocs, keyName.toLowerCase());
+
 		} catch (IOException ex) {
 
 			ex.printStackTrace();
 
+			Metrics.count("search.table.errors");
+
 			return null;
 
-		} finally {
+		} catch (NumberFormatException ex) { // 主键不是数字
 
-			doc = null;
+			ex.printStackTrace();
 
-			docs = null;
+			return null;
 
-		}
+		} finally {
 
-		return keyValues;
+			releaseSearcher(indexPath, searcher);
+
+		}
 
 	}
 
@@ -301,12 +1339,44 @@ public class SearchTable {
 
 	}
 
+	/**
+	 * 释放getSearcher获取的IndexSearcher
+	 * 
+	 * @param indexPath
+	 *            索引目录
+	 * @param searcher
+	 *            IndexSearcher
+	 */
+	public void releaseSearcher(File indexPath, IndexSearcher searcher) {
+
+		SearcherPool.release(indexPath, searcher);
+
+	}
+
+	public void setKeyCache(boolean keyCache) {
+
+		this.keyCache = keyCache;
+
+	}
+
 	public void setTopDocs(int topDocs) {
 
 		this.topDocs = topDocs;
 
 	}
 
+	public void setTimeout(long timeout) {
+
+		this.timeout = timeout;
+
+	}
+
+	public void setIndexOrder(boolean indexOrder) {
+
+		this.indexOrder = indexOrder;
+
+	}
+
 	// 测试
 	public void test() throws CorruptIndexException, IOException, ParseException, SQLException {
 
@@ -0,0 +1,832 @@
+package com.datagreatwall.searchengine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherLifetimeManager;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.RAMDirectory;
+
+/**
+ *
+ * 共享的IndexSearcher管理，SearchTable和SearchFiles共用
+ *
+ * 每个索引目录对应一个SearcherManager，通过acquire/release引用计数使用IndexSearcher，
+ * 索引的重新打开由后台定时任务或显式调用refresh完成，不在每次搜索时检查，
+ * 被替换的IndexReader在所有正在进行的搜索release之后才会关闭
+ *
+ * @author 石瑜
+ *
+ */
+public class SearcherPool {
+
+	public static long REFRESH_INTERVAL = 1000; // 后台重新打开索引的间隔毫秒数，小于1时不启动后台任务
+
+	// 索引目录绝对路径 -> SearcherManager
+	private static final ConcurrentHashMap<String, SearcherManager> MANAGERS = new ConcurrentHashMap<String, SearcherManager>();
+
+	// 索引目录绝对路径 -> 重新打开耗时统计
+	private static final ConcurrentHashMap<String, ReopenStats> STATS = new ConcurrentHashMap<String, ReopenStats>();
+
+	public static double CURSOR_MAX_AGE = 600; // 分页游标对应的IndexSearcher被替换后保留的秒数
+
+	// 索引目录绝对路径 -> 分页游标使用的IndexSearcher
+	private static final ConcurrentHashMap<String, SearcherLifetimeManager> LIFETIMES = new ConcurrentHashMap<String, SearcherLifetimeManager>();
+
+	// 索引复制到RAMDirectory的SearcherManager，索引改变后重新复制
+	private static final Set<SearcherManager> RAM_MANAGERS = Collections.newSetFromMap(new ConcurrentHashMap<SearcherManager, Boolean>());
+
+	private static ScheduledExecutorService refresher = null;
+
+	private SearcherPool() {
+
+	}
+
+	/**
+	 * 获取索引目录对应的IndexSearcher，使用完毕后必须调用release；
+	 * SearcherManager在获取过程中被其他线程关闭或替换时重新获取
+	 *
+	 * @param indexPath
+	 *            索引目录
+	 * @return IndexSearcher，或null
+	 */
+	public static IndexSearcher acquire(File indexPath) {
+
+		SearcherManager manager = getManager(indexPath);
+
+		while (manager != null) {
+
+			try {
+
+				return manager.acquire();
+
+			} catch (AlreadyClosedException ex) {
+
+				SearcherManager current = getManager(indexPath);
+
+				if (current == manager) {
+
+					return null;
+
+				}
+
+				manager = current;
+
+			}
+
+		}
+
+		return null;
+
+	}
+
+	/**
+	 * 释放acquire获取的IndexSearcher
+	 *
+	 * @param indexPath
+	 *            索引目录
+	 * @param searcher
+	 *            IndexSearcher
+	 */
+	public static void release(File indexPath, IndexSearcher searcher) {
+
+		if (indexPath == null || searcher == null) {
+
+			return;
+
+		}
+
+		SearcherManager manager = MANAGERS.get(indexPath.getAbsolutePath());
+
+		try {
+
+			if (manager != null) {
+
+				manager.release(searcher);
+
+			} else { // 已经关闭的索引目录，直接减少引用计数
+
+				searcher.getIndexReader().decRef();
+
+			}
+
+		} catch (IOException ex) {
+
+			ex.printStackTrace();
+
+		}
+
+	}
+
+	/**
+	 * 获取指定IndexReader版本的IndexSearcher，用于分页游标，使用完毕后必须调用release
+	 * 
+	 * @param indexPath
+	 *            索引目录
+	 * @param version
+	 *            record返回的IndexReader版本
+	 * @return IndexSearcher，已经过期时返回null
+	 */
+	public static IndexSearcher acquire(File indexPath, long version) {
+
+		if (indexPath == null) {
+
+			return null;
+
+		}
+
+		SearcherLifetimeManager lifetime = LIFETIMES.get(indexPath.getAbsolutePath());
+
+		if (lifetime == null) {
+
+			return null;
+
+		}
+
+		return lifetime.acquire(version);
+
+	}
+
+	/**
+	 * 记录IndexSearcher，使分页游标在索引重新打开后CURSOR_MAX_AGE秒内仍可以使用同一个IndexSearcher
+	 * 
+	 * @param indexPath
+	 *            索引目录
+	 * @param searcher
+	 *            IndexSearcher
+	 * @return IndexReader版本
+	 */
+	public static long record(File indexPath, IndexSearcher searcher) {
+
+		String path = indexPath.getAbsolutePath();
+
+		SearcherLifetimeManager lifetime = LIFETIMES.get(path);
+
+		if (lifetime == null) {
+
+			lifetime = new SearcherLifetimeManager();
+
+			SearcherLifetimeManager exists = LIFETIMES.putIfAbsent(path, lifetime);
+
+			if (exists != null) {
+
+				lifetime = exists;
+
+			}
+
+		}
+
+		try {
+
+			return lifetime.record(searcher);
+
+		} catch (IOException ex) {
+
+			ex.printStackTrace();
+
+			return searcher.getIndexReader().getVersion();
+
+		} catch (IllegalArgumentException ex) { // 已经记录了版本相同的另一个IndexSearcher
+
+			return searcher.getIndexReader().getVersion();
+
+		}
+
+	}
+
+	/**
+	 * 获取或新建索引目录对应的SearcherManager
+	 *
+	 * @param indexPath
+	 *            索引目录
+	 * @return SearcherManager，或null
+	 */
+	public static SearcherManager getManager(File indexPath) {
+
+		if (indexPath == null) {
+
+			return null;
+
+		}
+
+		String path = indexPath.getAbsolutePath();
+
+		SearcherManager manager = MANAGERS.get(path);
+
+		if (manager != null) {
+
+			return manager;
+
+		}
+
+		// 新建 SearcherManager，Directory由Directories按索引选择
+		Directory dir = null;
+
+		try {
+
+			dir = Directories.open(indexPath);
+
+			manager = new SearcherManager(dir, new Warmer(indexPath));
+
+		} catch (IOException ex) {
+
+			ex.printStackTrace();
+
+			if (dir != null) {
+
+				try {
+
+					dir.close();
+
+				} catch (IOException e) {
+
+				}
+
+			}
+
+			return null;
+
+		}
+
+		if (dir instanceof RAMDirectory) {
+
+			RAM_MANAGERS.add(manager);
+
+		}
+
+		return register(path, manager);
+
+	}
+
+	/**
+	 * 使用IndexWriter打开近实时的SearcherManager，替换索引目录已有的SearcherManager，
+	 * 搜索无需提交索引即可看到IndexWriter的修改，可见延迟由REFRESH_INTERVAL决定
+	 * 
+	 * @param indexPath
+	 *            索引目录
+	 * @param writer
+	 *            IndexWriter
+	 * @param applyDeletes
+	 *            重新打开时是否应用删除
+	 * @return SearcherManager
+	 * @throws IOException
+	 */
+	public static SearcherManager open(File indexPath, IndexWriter writer, boolean applyDeletes) throws IOException {
+
+		SearcherManager manager = new SearcherManager(writer, applyDeletes, new Warmer(indexPath));
+
+		SearcherManager old = MANAGERS.put(indexPath.getAbsolutePath(), manager);
+
+		if (old != null) {
+
+			RAM_MANAGERS.remove(old);
+
+			old.close();
+
+		}
+
+		// 新的IndexSearcher可能与已记录的版本相同但文档号不同，已有的分页游标失效
+		SearcherLifetimeManager lifetime = LIFETIMES.remove(indexPath.getAbsolutePath());
+
+		if (lifetime != null) {
+
+			lifetime.close();
+
+		}
+
+		startRefresh();
+
+		return manager;
+
+	}
+
+	/**
+	 * 注册SearcherManager，如果其他线程已经注册，关闭新建的SearcherManager并返回已注册的
+	 *
+	 * @param path
+	 *            索引目录绝对路径
+	 * @param manager
+	 *            SearcherManager
+	 * @return 已注册的SearcherManager
+	 */
+	static SearcherManager register(String path, SearcherManager manager) {
+
+		SearcherManager exists = MANAGERS.putIfAbsent(path, manager);
+
+		if (exists != null) {
+
+			RAM_MANAGERS.remove(manager);
+
+			try {
+
+				manager.close();
+
+			} catch (IOException ex) {
+
+			}
+
+			return exists;
+
+		}
+
+		startRefresh();
+
+		return manager;
+
+	}
+
+	/**
+	 * 如果索引已经改变，重新打开索引目录对应的IndexSearcher
+	 *
+	 * @param indexPath
+	 *            索引目录
+	 * @return 是否已经是最新的IndexSearcher
+	 */
+	public static boolean refresh(File indexPath) {
+
+		if (indexPath == null) {
+
+			return false;
+
+		}
+
+		String path = indexPath.getAbsolutePath();
+
+		SearcherManager manager = MANAGERS.get(path);
+
+		if (manager == null) {
+
+			return false;
+
+		}
+
+		return refresh(path, manager);
+
+	}
+
+	static boolean refresh(String path, SearcherManager manager) {
+
+		if (RAM_MANAGERS.contains(manager)) {
+
+			return reload(path, manager);
+
+		}
+
+		try {
+
+			if (manager.isSearcherCurrent()) {
+
+				return true;
+
+			}
+
+			long start = System.nanoTime();
+
+			// 其他线程正在重新打开时立即返回false，避免同时重新打开
+			boolean refreshed = manager.maybeRefresh();
+
+			if (refreshed) {
+
+				long nanos = System.nanoTime() - start;
+
+				getStats(path).add(nanos);
+
+				Metrics.record("searcher.reopen", nanos);
+
+			}
+
+			return refreshed;
+
+		} catch (AlreadyClosedException ex) { // 已经被其他线程关闭或替换
+
+			return false;
+
+		} catch (IOException ex) {
+
+			ex.printStackTrace();
+
+			return false;
+
+		}
+
+	}
+
+	/**
+	 * 磁盘上的索引已经改变时，重新复制到新的RAMDirectory并替换SearcherManager，
+	 * 正在使用旧IndexSearcher的搜索不受影响，全部release之后释放旧的RAMDirectory
+	 */
+	private static boolean reload(String path, SearcherManager manager) {
+
+		try {
+
+			long generation;
+
+			IndexSearcher searcher = manager.acquire();
+
+			try {
+
+				generation = searcher.getIndexReader().getIndexCommit().getGeneration();
+
+			} finally {
+
+				manager.release(searcher);
+
+			}
+
+			Directory fsDir = FSDirectory.open(new File(path));
+
+			try {
+
+				if (lastGeneration(fsDir) == generation) {
+
+					return true;
+
+				}
+
+			} finally {
+
+				fsDir.close();
+
+			}
+
+			long start = System.nanoTime();
+
+			Directory dir = Directories.open(new File(path));
+
+			SearcherManager fresh = new SearcherManager(dir, new Warmer(new File(path)));
+
+			if (dir instanceof RAMDirectory) {
+
+				RAM_MANAGERS.add(fresh);
+
+			}
+
+			if (!MANAGERS.replace(path, manager, fresh)) { // 已经被关闭或替换
+
+				RAM_MANAGERS.remove(fresh);
+
+				fresh.close();
+
+				return false;
+
+			}
+
+			RAM_MANAGERS.remove(manager);
+
+			manager.close();
+
+			long nanos = System.nanoTime() - start;
+
+			getStats(path).add(nanos);
+
+			Metrics.record("searcher.reopen", nanos);
+
+			return true;
+
+		} catch (AlreadyClosedException ex) { // 已经被其他线程关闭或替换
+
+			return false;
+
+		} catch (IOException ex) {
+
+			ex.printStackTrace();
+
+			return false;
+
+		}
+
+	}
+
+	/**
+	 * 磁盘上最近一次提交的generation
+	 */
+	private static long lastGeneration(Directory dir) throws IOException {
+
+		long generation = -1;
+
+		for (IndexCommit commit : IndexReader.listCommits(dir)) {
+
+			generation = Math.max(generation, commit.getGeneration());
+
+		}
+
+		return generation;
+
+	}
+
+	/**
+	 * 重新打开所有已经改变的索引
+	 */
+	public static void refreshAll() {
+
+		for (String path : MANAGERS.keySet()) {
+
+			SearcherManager manager = MANAGERS.get(path);
+
+			if (manager == null) {
+
+				continue;
+
+			}
+
+			try {
+
+				refresh(path, manager);
+
+			} catch (RuntimeException ex) { // 一个索引出错不影响其他索引
+
+				ex.printStackTrace();
+
+			}
+
+		}
+
+		// 释放过期的分页游标IndexSearcher
+		for (SearcherLifetimeManager lifetime : LIFETIMES.values()) {
+
+			try {
+
+				lifetime.prune(new SearcherLifetimeManager.PruneByAge(CURSOR_MAX_AGE));
+
+			} catch (IOException ex) {
+
+				ex.printStackTrace();
+
+			} catch (RuntimeException ex) {
+
+				ex.printStackTrace();
+
+			}
+
+		}
+
+	}
+
+	/**
+	 * 启动后台定时重新打开索引，间隔为REFRESH_INTERVAL
+	 */
+	public static synchronized void startRefresh() {
+
+		if (refresher != null || REFRESH_INTERVAL < 1) {
+
+			return;
+
+		}
+
+		refresher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			public Thread newThread(Runnable r) {
+
+				Thread thread = new Thread(r, "searcher-refresh");
+
+				thread.setDaemon(true);
+
+				return thread;
+
+			}
+
+		});
+
+		refresher.scheduleWithFixedDelay(new Runnable() {
+
+			public void run() {
+
+				// 抛出异常后定时任务不再执行，因此捕获全部异常
+				try {
+
+					refreshAll();
+
+				} catch (Throwable ex) {
+
+					ex.printStackTrace();
+
+				}
+
+			}
+
+		}, REFRESH_INTERVAL, REFRESH_INTERVAL, TimeUnit.MILLISECONDS);
+
+	}
+
+	/**
+	 * 设置后台重新打开索引的间隔毫秒数，后台任务已经启动时按新的间隔重新启动
+	 * 
+	 * @param interval
+	 *            间隔毫秒数，小于1时停止后台任务
+	 */
+	public static synchronized void setRefreshInterval(long interval) {
+
+		REFRESH_INTERVAL = interval;
+
+		if (refresher != null) {
+
+			stopRefresh();
+
+			startRefresh();
+
+		}
+
+	}
+
+	/**
+	 * 停止后台定时重新打开索引
+	 */
+	public static synchronized void stopRefresh() {
+
+		if (refresher != null) {
+
+			refresher.shutdown();
+
+			refresher = null;
+
+		}
+
+	}
+
+	/**
+	 * 关闭索引目录对应的SearcherManager，正在使用的IndexReader在release之后关闭
+	 *
+	 * @param indexPath
+	 *            索引目录
+	 */
+	public static void close(File indexPath) {
+
+		if (indexPath == null) {
+
+			return;
+
+		}
+
+		SearcherManager manager = MANAGERS.remove(indexPath.getAbsolutePath());
+
+		if (manager != null) {
+
+			RAM_MANAGERS.remove(manager);
+
+			try {
+
+				manager.close();
+
+			} catch (IOException ex) {
+
+				ex.printStackTrace();
+
+			}
+
+		}
+
+		SearcherLifetimeManager lifetime = LIFETIMES.remove(indexPath.getAbsolutePath());
+
+		if (lifetime != null) {
+
+			try {
+
+				lifetime.close();
+
+			} catch (IOException ex) {
+
+				ex.printStackTrace();
+
+			}
+
+		}
+
+	}
+
+	/**
+	 * 关闭所有SearcherManager，并停止后台任务
+	 */
+	public static void closeAll() {
+
+		stopRefresh();
+
+		for (String path : MANAGERS.keySet()) {
+
+			close(new File(path));
+
+		}
+
+	}
+
+	/**
+	 * 获取索引目录的重新打开耗时统计
+	 *
+	 * @param indexPath
+	 *            索引目录
+	 * @return ReopenStats，或null
+	 */
+	public static ReopenStats getReopenStats(File indexPath) {
+
+		if (indexPath == null) {
+
+			return null;
+
+		}
+
+		return STATS.get(indexPath.getAbsolutePath());
+
+	}
+
+	private static ReopenStats getStats(String path) {
+
+		ReopenStats stats = STATS.get(path);
+
+		if (stats == null) {
+
+			stats = new ReopenStats();
+
+			ReopenStats exists = STATS.putIfAbsent(path, stats);
+
+			if (exists != null) {
+
+				stats = exists;
+
+			}
+
+		}
+
+		return stats;
+
+	}
+
+	/**
+	 * 索引重新打开次数及耗时(纳秒)
+	 */
+	public static class ReopenStats {
+
+		private final AtomicLong count = new AtomicLong();
+
+		private final AtomicLong total = new AtomicLong();
+
+		private final AtomicLong max = new AtomicLong();
+
+		private volatile long last = 0;
+
+		void add(long nanos) {
+
+			count.incrementAndGet();
+
+			total.addAndGet(nanos);
+
+			last = nanos;
+
+			long m = max.get();
+
+			while (nanos > m && !max.compareAndSet(m, nanos)) {
+
+				m = max.get();
+
+			}
+
+		}
+
+		public long getCount() {
+
+			return count.get();
+
+		}
+
+		public long getLast() {
+
+			return last;
+
+		}
+
+		public long getMax() {
+
+			return max.get();
+
+		}
+
+		public long getAverage() {
+
+			long c = count.get();
+
+			return c == 0 ? 0 : total.get() / c;
+
+		}
+
+		public String toString() {
+
+			return "count:" + getCount() + "\tlast:" + getLast() / 1000000 + "ms\tavg:" + getAverage() / 1000000 + "ms\tmax:" + getMax() / 1000000 + "ms";
+
+		}
+
+	}
+
+}
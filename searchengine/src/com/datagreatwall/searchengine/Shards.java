@@ -0,0 +1,185 @@
+package com.datagreatwall.searchengine;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 
+ * 索引分片设置，IndexTable和SearchTable共用
+ * 
+ * 分片的表按主键把记录分到多个子索引目录(上级索引目录/表名/shard-0 ...)，并行建索引；
+ * 搜索时并行搜索各个分片，按评分合并前N条结果。未设置的表只有一个分片，索引目录为上级索引目录/表名
+ * 
+ * 按哈希分片：setShards设置分片数，主键的哈希值对分片数取余；
+ * 按范围分片：setRanges设置升序的分界主键，分片数为分界数加1，小于第一个分界的在分片0，依此类推，
+ * 主键与分界都是整数时按数值比较，否则按字符串比较
+ * 
+ * 分片设置必须在建索引和搜索前设置，并且两者一致；修改分片数后需要重新建索引
+ * 
+ * @author 石瑜
+ * 
+ */
+public class Shards {
+
+	public static int DEFAULT_SHARDS = Integer.getInteger("searchengine.shards", 1); // 未单独设置的表的分片数
+
+	public static final String PREFIX = "shard-"; // 分片子索引目录名前缀
+
+	private static final ConcurrentHashMap<String, Integer> SHARDS = new ConcurrentHashMap<String, Integer>();
+
+	private static final ConcurrentHashMap<String, String[]> RANGES = new ConcurrentHashMap<String, String[]>();
+
+	private Shards() {
+
+	}
+
+	/**
+	 * 设置表按主键哈希分片
+	 * 
+	 * @param table
+	 *            表名
+	 * @param shards
+	 *            分片数，小于2时不分片
+	 */
+	public static void setShards(String table, int shards) {
+
+		table = table.trim();
+
+		RANGES.remove(table);
+
+		SHARDS.put(table, Math.max(1, shards));
+
+	}
+
+	/**
+	 * 设置表按主键范围分片
+	 * 
+	 * @param table
+	 *            表名
+	 * @param bounds
+	 *            升序的分界主键，分片数为bounds.length + 1
+	 */
+	public static void setRanges(String table, String... bounds) {
+
+		table = table.trim();
+
+		RANGES.put(table, bounds.clone());
+
+		SHARDS.put(table, bounds.length + 1);
+
+	}
+
+	/**
+	 * 表的分片数
+	 */
+	public static int getShards(String table) {
+
+		Integer shards = SHARDS.get(table.trim());
+
+		return shards != null ? shards : Math.max(1, DEFAULT_SHARDS);
+
+	}
+
+	public static boolean isSharded(String table) {
+
+		return getShards(table) > 1;
+
+	}
+
+	/**
+	 * 分片的索引目录
+	 * 
+	 * @param indexBase
+	 *            上级索引目录
+	 * @param table
+	 *            表名
+	 * @param shard
+	 *            分片号
+	 * @return 不分片时为上级索引目录/表名，否则为上级索引目录/表名/shard-分片号
+	 */
+	public static File path(File indexBase, String table, int shard) {
+
+		File indexPath = new File(indexBase, table);
+
+		return isSharded(table) ? new File(indexPath, PREFIX + shard) : indexPath;
+
+	}
+
+	/**
+	 * 表的全部索引目录
+	 */
+	public static File[] paths(File indexBase, String table) {
+
+		File[] paths = new File[getShards(table)];
+
+		for (int i = 0; i < paths.length; i++) {
+
+			paths[i] = path(indexBase, table, i);
+
+		}
+
+		return paths;
+
+	}
+
+	/**
+	 * 主键所在的分片号
+	 * 
+	 * @param table
+	 *            表名
+	 * @param keyValue
+	 *            主键值
+	 * @return 分片号，不分片时为0
+	 */
+	public static int shard(String table, String keyValue) {
+
+		int shards = getShards(table);
+
+		if (shards < 2) {
+
+			return 0;
+
+		}
+
+		String[] bounds = RANGES.get(table.trim());
+
+		if (bounds == null) {
+
+			return (keyValue.hashCode() & Integer.MAX_VALUE) % shards;
+
+		}
+
+		int shard = 0;
+
+		while (shard < bounds.length && compare(keyValue, bounds[shard]) >= 0) {
+
+			shard++;
+
+		}
+
+		return shard;
+
+	}
+
+	/**
+	 * 比较主键，都是整数时按数值比较，否则按字符串比较
+	 */
+	static int compare(String key1, String key2) {
+
+		try {
+
+			long l1 = Long.parseLong(key1.trim());
+
+			long l2 = Long.parseLong(key2.trim());
+
+			return l1 < l2 ? -1 : (l1 == l2 ? 0 : 1);
+
+		} catch (NumberFormatException ex) {
+
+			return key1.compareTo(key2);
+
+		}
+
+	}
+
+}
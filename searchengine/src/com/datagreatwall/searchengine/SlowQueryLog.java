@@ -0,0 +1,382 @@
+package com.datagreatwall.searchengine;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 
+ * 慢查询日志，搜索耗时超过THRESHOLD毫秒时记录规范化的关键字、索引目录、列名、AND/OR、命中数及各阶段耗时
+ * 
+ * 日志放入队列后由后台线程写入文件，搜索线程不等待磁盘；队列已满时丢弃并计数。
+ * 文件超过MAX_FILE_SIZE字节时滚动：slowquery.log改名为slowquery.log.1，原.1改名为.2，最多保留MAX_FILES个
+ * 
+ * 每行以制表符分隔：时间，总耗时，获取IndexSearcher，查缓存，解析，搜索，读取键值(毫秒)，命中数，是否AND，索引目录，列名，关键字
+ * 
+ * @author 石瑜
+ * 
+ */
+public class SlowQueryLog {
+
+	public static long THRESHOLD = Long.getLong("searchengine.slowquery", -1L); // 慢查询阈值(毫秒)，小于0时不记录
+
+	public static String FILE = System.getProperty("searchengine.slowquery.file", "logs/slowquery.log"); // 日志文件
+
+	public static long MAX_FILE_SIZE = 10 * 1024 * 1024; // 日志文件最大字节数，超过时滚动
+
+	public static int MAX_FILES = 5; // 最多保留的滚动文件数
+
+	private static final ArrayBlockingQueue<Trace> QUEUE = new ArrayBlockingQueue<Trace>(10000); // 等待写入的日志
+
+	private static final AtomicLong DROPPED = new AtomicLong();
+
+	private static Thread writerThread = null;
+
+	private static Writer out = null; // 当前打开的日志文件，只由后台线程使用
+
+	private static String outPath = null;
+
+	private static long outSize = 0;
+
+	private SlowQueryLog() {
+
+	}
+
+	/**
+	 * 是否记录慢查询
+	 */
+	public static boolean isEnabled() {
+
+		return THRESHOLD >= 0;
+
+	}
+
+	/**
+	 * 开始记录一次搜索的各阶段耗时
+	 * 
+	 * @return Trace，不记录慢查询时返回null
+	 */
+	public static Trace begin() {
+
+		return THRESHOLD >= 0 ? new Trace() : null;
+
+	}
+
+	/**
+	 * 搜索结束，超过阈值时放入队列，队列已满时丢弃
+	 * 
+	 * @param trace
+	 *            Trace，为null时忽略
+	 * @param indexPath
+	 *            索引目录
+	 * @param queries
+	 *            规范化的关键字
+	 * @param colNames
+	 *            列名数组
+	 * @param and
+	 *            是否AND操作
+	 */
+	public static void end(Trace trace, File indexPath, String queries, String[] colNames, boolean and) {
+
+		if (trace == null || THRESHOLD < 0) {
+
+			return;
+
+		}
+
+		trace.total = System.nanoTime() - trace.start;
+
+		if (trace.total < TimeUnit.MILLISECONDS.toNanos(THRESHOLD)) {
+
+			return;
+
+		}
+
+		trace.time = System.currentTimeMillis();
+
+		trace.indexPath = indexPath.getPath();
+
+		trace.queries = queries;
+
+		trace.colNames = colNames.clone();
+
+		trace.and = and;
+
+		startWriter();
+
+		if (!QUEUE.offer(trace)) {
+
+			DROPPED.incrementAndGet();
+
+		}
+
+	}
+
+	/**
+	 * 队列已满时丢弃的日志数
+	 */
+	public static long getDropped() {
+
+		return DROPPED.get();
+
+	}
+
+	private static synchronized void startWriter() {
+
+		if (writerThread != null) {
+
+			return;
+
+		}
+
+		writerThread = new Thread(new Runnable() {
+
+			public void run() {
+
+				try {
+
+					write();
+
+				} finally {
+
+					stopped();
+
+				}
+
+			}
+
+		}, "slowquery-log");
+
+		writerThread.setDaemon(true);
+
+		writerThread.start();
+
+	}
+
+	/**
+	 * 后台线程退出后清除，下一条慢查询重新启动
+	 */
+	private static synchronized void stopped() {
+
+		writerThread = null;
+
+		close();
+
+	}
+
+	/**
+	 * 后台线程，批量取出队列中的日志写入文件，一批出错时丢弃该批并继续
+	 */
+	private static void write() {
+
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+
+		List<Trace> traces = new ArrayList<Trace>();
+
+		while (true) {
+
+			try {
+
+				traces.add(QUEUE.take());
+
+			} catch (InterruptedException ex) {
+
+				return;
+
+			}
+
+			QUEUE.drainTo(traces);
+
+			try {
+
+				StringBuilder sb = new StringBuilder();
+
+				for (Trace trace : traces) {
+
+					sb.append(format.format(new Date(trace.time)));
+
+					sb.append('\t').append(millis(trace.total));
+
+					sb.append('\t').append(millis(trace.acquire));
+
+					sb.append('\t').append(millis(trace.cache));
+
+					sb.append('\t').append(millis(trace.parse));
+
+					sb.append('\t').append(millis(trace.search));
+
+					sb.append('\t').append(millis(trace.load));
+
+					sb.append('\t').append(trace.cached ? "cached" : String.valueOf(trace.hits));
+
+					sb.append('\t').append(trace.and ? "AND" : "OR");
+
+					sb.append('\t').append(trace.indexPath);
+
+					sb.append('\t').append(Arrays.toString(trace.colNames));
+
+					sb.append('\t').append(trace.queries);
+
+					sb.append('\n');
+
+				}
+
+				append(sb.toString());
+
+			} catch (IOException ex) {
+
+				ex.printStackTrace();
+
+				close();
+
+			} catch (RuntimeException ex) {
+
+				ex.printStackTrace();
+
+			} finally {
+
+				traces.clear();
+
+			}
+
+		}
+
+	}
+
+	private static String millis(long nanos) {
+
+		return String.format("%.3f", nanos / 1e6);
+
+	}
+
+	/**
+	 * 追加到日志文件，文件在各批之间保持打开，超过MAX_FILE_SIZE时关闭并滚动
+	 */
+	private static void append(String lines) throws IOException {
+
+		if (out != null && (outSize > MAX_FILE_SIZE || !FILE.equals(outPath))) {
+
+			close();
+
+		}
+
+		if (out == null) {
+
+			File file = new File(FILE);
+
+			if (file.getParentFile() != null) {
+
+				file.getParentFile().mkdirs();
+
+			}
+
+			if (file.length() > MAX_FILE_SIZE) {
+
+				roll(file);
+
+			}
+
+			outPath = FILE;
+
+			outSize = file.length();
+
+			out = new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8");
+
+		}
+
+		out.write(lines);
+
+		out.flush();
+
+		outSize += lines.getBytes("UTF-8").length;
+
+	}
+
+	private static void close() {
+
+		if (out == null) {
+
+			return;
+
+		}
+
+		try {
+
+			out.close();
+
+		} catch (IOException ex) {
+
+			ex.printStackTrace();
+
+		}
+
+		out = null;
+
+	}
+
+	private static void roll(File file) {
+
+		new File(file.getPath() + "." + MAX_FILES).delete();
+
+		for (int i = MAX_FILES - 1; i >= 1; i--) {
+
+			File from = new File(file.getPath() + "." + i);
+
+			if (from.exists()) {
+
+				from.renameTo(new File(file.getPath() + "." + (i + 1)));
+
+			}
+
+		}
+
+		file.renameTo(new File(file.getPath() + ".1"));
+
+	}
+
+	/**
+	 * 一次搜索的各阶段耗时(纳秒)
+	 */
+	public static class Trace {
+
+		final long start = System.nanoTime();
+
+		long acquire; // 获取IndexSearcher
+
+		long cache; // 查询结果缓存
+
+		long parse; // 解析关键字(包括创建Analyzer及QueryParser)
+
+		long search; // 搜索及评分
+
+		long load; // 读取键值
+
+		long hits; // 命中数
+
+		boolean cached; // 结果来自缓存
+
+		long total;
+
+		long time;
+
+		String indexPath;
+
+		String queries;
+
+		String[] colNames;
+
+		boolean and;
+
+	}
+
+}
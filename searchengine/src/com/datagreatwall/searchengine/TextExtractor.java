@@ -0,0 +1,21 @@
+package com.datagreatwall.searchengine;
+
+/**
+ * 
+ * 提取HTML内容中的纯文本，实现必须是线程安全的
+ * 
+ * @author 石瑜
+ * 
+ */
+public interface TextExtractor {
+
+	/**
+	 * 提取纯文本
+	 * 
+	 * @param value
+	 *            HTML或纯文本内容
+	 * @return 纯文本内容
+	 */
+	String extract(String value);
+
+}
@@ -0,0 +1,508 @@
+package com.datagreatwall.searchengine;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.queryParser.ParseException;
+import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.SearcherFactory;
+
+/**
+ * 
+ * 预热新打开或重新打开的IndexSearcher，SearcherManager在替换IndexSearcher之前调用，预热完成前搜索继续使用旧的IndexSearcher
+ * 
+ * 执行预设的查询(addQuery)及最近的查询(SearchTable、SearchFiles搜索时记录，或从慢查询日志replay)，
+ * 加载词典、倒排表及norms，并为使用keyCache的主键加载FieldCache(addKey或搜索时记录)；
+ * 预热最多执行MAX_TIME毫秒，预热失败不影响打开IndexSearcher
+ * 
+ * @author 石瑜
+ * 
+ */
+public class Warmer extends SearcherFactory {
+
+	public static boolean ENABLED = Boolean.parseBoolean(System.getProperty("searchengine.warm", "true")); // 是否预热
+
+	public static int RECENT = 32; // 每个索引保存的最近查询数
+
+	public static int TOP = 20; // 预热查询返回的结果数
+
+	public static long MAX_TIME = 5000; // 每次预热最多毫秒数
+
+	// 索引目录绝对路径或表名 -> 预设的查询及主键
+	private static final ConcurrentHashMap<String, List<Spec>> SPECS = new ConcurrentHashMap<String, List<Spec>>();
+
+	// 索引目录绝对路径 -> 最近的查询
+	private static final ConcurrentHashMap<String, Recent> RECENTS = new ConcurrentHashMap<String, Recent>();
+
+	private final File indexPath;
+
+	/**
+	 * 
+	 * @param indexPath
+	 *            索引目录
+	 */
+	public Warmer(File indexPath) {
+
+		this.indexPath = indexPath;
+
+	}
+
+	public IndexSearcher newSearcher(IndexReader reader) throws IOException {
+
+		IndexSearcher searcher = new IndexSearcher(reader);
+
+		if (ENABLED) {
+
+			warm(searcher);
+
+		}
+
+		return searcher;
+
+	}
+
+	/**
+	 * 执行预热，返回执行的查询数
+	 * 
+	 * @param searcher
+	 *            IndexSearcher
+	 * @return 执行的查询数
+	 */
+	public int warm(IndexSearcher searcher) {
+
+		long start = System.currentTimeMillis();
+
+		long nanos = Metrics.start();
+
+		int count = 0;
+
+		Set<String> keyNames = new LinkedHashSet<String>();
+
+		for (Spec spec : specs()) {
+
+			if (System.currentTimeMillis() - start > MAX_TIME) {
+
+				break;
+
+			}
+
+			if (spec.keyName != null) {
+
+				keyNames.add(spec.keyName);
+
+			}
+
+			if (spec.queries == null) {
+
+				continue;
+
+			}
+
+			try {
+
+				Query query = query(spec);
+
+				if (query != null) {
+
+					searcher.search(query, TOP);
+
+					count++;
+
+				}
+
+			} catch (Exception ex) { // 预热失败不影响打开IndexSearcher
+
+				ex.printStackTrace();
+
+			}
+
+		}
+
+		for (String keyName : keyNames) {
+
+			try {
+
+				KeyCache.load(searcher, keyName);
+
+			} catch (Exception ex) {
+
+				ex.printStackTrace();
+
+			}
+
+		}
+
+		Metrics.count("searcher.warm.queries", count);
+
+		Metrics.time("searcher.warm", nanos);
+
+		return count;
+
+	}
+
+	/**
+	 * 预设的查询在前，最近的查询在后，去掉重复的
+	 */
+	private List<Spec> specs() {
+
+		Set<Spec> specs = new LinkedHashSet<Spec>();
+
+		String path = indexPath.getAbsolutePath();
+
+		for (String name : new String[] { path, indexPath.getName(), table(indexPath) }) {
+
+			List<Spec> list = name != null ? SPECS.get(name) : null;
+
+			if (list != null) {
+
+				specs.addAll(list);
+
+			}
+
+		}
+
+		Recent recent = RECENTS.get(path);
+
+		if (recent == null && table(indexPath) != null) { // 分片的表按上级目录记录
+
+			recent = RECENTS.get(indexPath.getParentFile().getAbsolutePath());
+
+		}
+
+		if (recent != null) {
+
+			specs.addAll(recent.list());
+
+		}
+
+		return new ArrayList<Spec>(specs);
+
+	}
+
+	/**
+	 * 分片索引目录对应的表名，不是分片时返回null
+	 */
+	private static String table(File indexPath) {
+
+		if (indexPath.getName().startsWith(Shards.PREFIX) && indexPath.getParentFile() != null) {
+
+			return indexPath.getParentFile().getName();
+
+		}
+
+		return null;
+
+	}
+
+	private static Query query(Spec spec) throws ParseException {
+
+		Occur[] clauses = new Occur[spec.colNames.length];
+
+		Arrays.fill(clauses, spec.and ? Occur.MUST : Occur.SHOULD);
+
+		return Analyzers.parse(QueryParser.escape(spec.queries), spec.colNames, clauses);
+
+	}
+
+	/**
+	 * 添加预设的预热查询
+	 * 
+	 * @param name
+	 *            索引目录绝对路径或表名
+	 * @param queries
+	 *            关键字
+	 * @param colNames
+	 *            列名数组
+	 * @param and
+	 *            是否AND操作
+	 */
+	public static void addQuery(String name, String queries, String[] colNames, boolean and) {
+
+		specs(name).add(new Spec(queries, colNames, and, null));
+
+	}
+
+	/**
+	 * 添加预热时加载FieldCache的主键
+	 * 
+	 * @param name
+	 *            索引目录绝对路径或表名
+	 * @param keyName
+	 *            主键名
+	 */
+	public static void addKey(String name, String keyName) {
+
+		specs(name).add(new Spec(null, null, false, keyName.toLowerCase()));
+
+	}
+
+	/**
+	 * 清除预设的预热查询及主键
+	 */
+	public static void clear(String name) {
+
+		SPECS.remove(name);
+
+	}
+
+	private static List<Spec> specs(String name) {
+
+		List<Spec> list = SPECS.get(name);
+
+		if (list == null) {
+
+			list = new CopyOnWriteArrayList<Spec>();
+
+			List<Spec> exists = SPECS.putIfAbsent(name, list);
+
+			if (exists != null) {
+
+				list = exists;
+
+			}
+
+		}
+
+		return list;
+
+	}
+
+	/**
+	 * 记录最近的查询，重新打开索引时重放
+	 * 
+	 * @param indexPath
+	 *            索引目录，分片的表为上级索引目录/表名
+	 * @param queries
+	 *            规范化的关键字
+	 * @param colNames
+	 *            列名数组
+	 * @param and
+	 *            是否AND操作
+	 * @param keyName
+	 *            需要加载FieldCache的主键名，可以为null
+	 */
+	public static void record(File indexPath, String queries, String[] colNames, boolean and, String keyName) {
+
+		if (!ENABLED || RECENT < 1) {
+
+			return;
+
+		}
+
+		String path = indexPath.getAbsolutePath();
+
+		Recent recent = RECENTS.get(path);
+
+		if (recent == null) {
+
+			recent = new Recent(RECENT);
+
+			Recent exists = RECENTS.putIfAbsent(path, recent);
+
+			if (exists != null) {
+
+				recent = exists;
+
+			}
+
+		}
+
+		recent.add(new Spec(queries, colNames, and, keyName != null ? keyName.toLowerCase() : null));
+
+	}
+
+	/**
+	 * 从慢查询日志读取查询，作为各索引最近的查询，用于启动后第一次打开索引时预热
+	 * 
+	 * @param log
+	 *            SlowQueryLog写入的日志文件
+	 * @return 读取的查询数
+	 */
+	public static int replay(File log) {
+
+		int count = 0;
+
+		BufferedReader reader = null;
+
+		try {
+
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(log), "UTF-8"));
+
+			String line;
+
+			while ((line = reader.readLine()) != null) {
+
+				// 时间，耗时(6列)，命中数，AND/OR，索引目录，列名，关键字
+				String[] fields = line.split("\t");
+
+				if (fields.length < 12) {
+
+					continue;
+
+				}
+
+				String cols = fields[10].trim();
+
+				if (cols.startsWith("[") && cols.endsWith("]")) {
+
+					cols = cols.substring(1, cols.length() - 1);
+
+				}
+
+				String[] colNames = cols.split(",\\s*");
+
+				if (colNames.length == 0 || colNames[0].length() == 0 || fields[11].trim().length() == 0) {
+
+					continue;
+
+				}
+
+				record(new File(fields[9]), fields[11].trim(), colNames, "AND".equals(fields[8]), null);
+
+				count++;
+
+			}
+
+		} catch (IOException ex) {
+
+			ex.printStackTrace();
+
+		} finally {
+
+			if (reader != null) {
+
+				try {
+
+					reader.close();
+
+				} catch (IOException ex) {
+
+				}
+
+			}
+
+		}
+
+		return count;
+
+	}
+
+	/**
+	 * 一个预热查询或需要加载的主键
+	 */
+	private static class Spec {
+
+		final String queries;
+
+		final String[] colNames;
+
+		final boolean and;
+
+		final String keyName;
+
+		Spec(String queries, String[] colNames, boolean and, String keyName) {
+
+			this.queries = queries;
+
+			this.colNames = colNames != null ? new String[colNames.length] : null;
+
+			for (int i = 0; colNames != null && i < colNames.length; i++) {
+
+				this.colNames[i] = colNames[i].trim().toLowerCase();
+
+			}
+
+			this.and = and;
+
+			this.keyName = keyName;
+
+		}
+
+		public boolean equals(Object o) {
+
+			if (!(o instanceof Spec)) {
+
+				return false;
+
+			}
+
+			Spec s = (Spec) o;
+
+			return and == s.and && eq(queries, s.queries) && Arrays.equals(colNames, s.colNames) && eq(keyName, s.keyName);
+
+		}
+
+		public int hashCode() {
+
+			return Arrays.hashCode(new Object[] { queries, Arrays.hashCode(colNames), and, keyName });
+
+		}
+
+		private static boolean eq(String s1, String s2) {
+
+			return s1 == null ? s2 == null : s1.equals(s2);
+
+		}
+
+	}
+
+	/**
+	 * 最近的查询，环形数组，并发添加时可能覆盖，不影响预热
+	 */
+	private static class Recent {
+
+		private final AtomicReferenceArray<Spec> specs;
+
+		private final AtomicInteger next = new AtomicInteger();
+
+		Recent(int size) {
+
+			specs = new AtomicReferenceArray<Spec>(size);
+
+		}
+
+		void add(Spec spec) {
+
+			specs.set((next.getAndIncrement() & Integer.MAX_VALUE) % specs.length(), spec);
+
+		}
+
+		List<Spec> list() {
+
+			List<Spec> list = new ArrayList<Spec>(specs.length());
+
+			for (int i = 0; i < specs.length(); i++) {
+
+				Spec spec = specs.get(i);
+
+				if (spec != null) {
+
+					list.add(spec);
+
+				}
+
+			}
+
+			return list;
+
+		}
+
+	}
+
+}